@@ -0,0 +1,196 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+import java.io.*;
+import java.nio.charset.*;
+
+/**
+ * {@code ArchiveTranslator} translating the source files in a zip or jar
+ * archive straight into another archive, without unpacking either to disk.
+ * Entries are read in order; each entry with an extension a
+ * {@code TokenizerProfile} is registered for is translated on a thread pool,
+ * and every other entry is copied through unchanged. The output archive has
+ * the same entries in the same order.
+ */
+public final class ArchiveTranslator {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * An output entry and its content, ready to write.
+     */
+    private static final class Translated {
+
+        /**
+         * The output entry.
+         */
+        final ZipEntry entry;
+
+        /**
+         * The content, or null for a directory.
+         */
+        final byte[] content;
+
+        /**
+         * Whether the content was translated.
+         */
+        final boolean translated;
+
+        /**
+         * Constructor.
+         */
+        Translated(ZipEntry entry, byte[] content, boolean translated) {
+            this.entry = entry;
+            this.content = content;
+            this.translated = translated;
+        }
+
+    }
+
+    /**
+     * No instances.
+     */
+    private ArchiveTranslator() {
+    }
+
+    /**
+     * Reads the rest of the current entry of {@code in}.
+     */
+    private static byte[] readEntry(ZipInputStream in) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            content.write(buffer, 0, n);
+        }
+        return content.toByteArray();
+    }
+
+    /**
+     * Returns a copy of {@code entry} for the output archive; the compressed
+     * size is left to be recomputed.
+     */
+    private static ZipEntry copyOf(ZipEntry entry) {
+        ZipEntry copy = new ZipEntry(entry);
+        copy.setCompressedSize(-1);
+        return copy;
+    }
+
+    /**
+     * Returns an entry named like {@code entry} for translated content:
+     * deflated, with the time and comment of {@code entry}.
+     */
+    private static ZipEntry translatedEntry(ZipEntry entry) {
+        ZipEntry out = new ZipEntry(entry.getName());
+        out.setMethod(ZipEntry.DEFLATED);
+        if (entry.getTime() != -1) {
+            out.setTime(entry.getTime());
+        }
+        out.setComment(entry.getComment());
+        return out;
+    }
+
+    /**
+     * Writes finished entries at the head of {@code pending} to {@code out};
+     * waits for them while more than {@code maxInFlight} are pending.
+     * Returns the number of translated entries written.
+     */
+    private static int writeCompleted(Deque<Future<Translated>> pending,
+            ZipOutputStream out, int maxInFlight) throws IOException {
+        int translated = 0;
+        while (!pending.isEmpty() && (pending.size() > maxInFlight
+                || pending.peekFirst().isDone())) {
+            Translated next;
+            try {
+                next = pending.removeFirst().get();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted translating");
+            } catch(ExecutionException e) {
+                throw new IOException("Error translating", e.getCause());
+            }
+            out.putNextEntry(next.entry);
+            if (next.content != null) {
+                out.write(next.content);
+            }
+            out.closeEntry();
+            if (next.translated) {
+                translated++;
+            }
+        }
+        return translated;
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Translates the archive read from {@code in} into an archive written to
+     * {@code out}. Source entries are decoded and encoded with
+     * {@code charset}; line terminators are kept as they are.
+     *
+     * @param in
+     *            the source archive
+     * @param out
+     *            the stream to write the translated archive to; finished but
+     *            not closed
+     * @param dictionary
+     *            the word to definition map
+     * @param charset
+     *            the charset of the source entries
+     * @param threads
+     *            the number of translation threads
+     * @return the number of entries translated
+     * @throws IOException
+     *             if reading or writing fails
+     * @updates in, out
+     * @requires threads > 0
+     */
+    public static int translate(InputStream in, OutputStream out,
+            final Map<String, String> dictionary, final Charset charset,
+            int threads) throws IOException {
+        assert threads > 0 : "Violation of: threads > 0";
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Deque<Future<Translated>> pending = new ArrayDeque<>();
+        int maxPending = 2 * threads;
+        int translated = 0;
+        try {
+            ZipInputStream zipIn = new ZipInputStream(in);
+            ZipOutputStream zipOut = new ZipOutputStream(out);
+            ZipEntry entry;
+            while ((entry = zipIn.getNextEntry()) != null) {
+                final ZipEntry source = entry;
+                final TokenizerProfile profile = entry.isDirectory() ? null
+                        : TokenizerProfile.forFileName(entry.getName());
+                final byte[] content = entry.isDirectory() ? null
+                        : readEntry(zipIn);
+                if (profile == null) {
+                    pending.addLast(CompletableFuture.completedFuture(
+                            new Translated(copyOf(source), content, false)));
+                } else {
+                    pending.addLast(pool.submit(new Callable<Translated>() {
+                        @Override
+                        public Translated call() {
+                            byte[] bytes = Main.translateLine(
+                                    new String(content, charset), dictionary,
+                                    profile).getBytes(charset);
+                            return new Translated(translatedEntry(source),
+                                    bytes, true);
+                        }
+                    }));
+                }
+                translated += writeCompleted(pending, zipOut, maxPending);
+            }
+            translated += writeCompleted(pending, zipOut, 0);
+            zipOut.finish();
+        } finally {
+            pool.shutdownNow();
+        }
+        return translated;
+    }
+
+}
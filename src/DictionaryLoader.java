@@ -0,0 +1,356 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+/**
+ * {@code DictionaryLoader} utility class reading dictionary files of
+ * {@code word, definition} lines and reporting the lines it could not parse
+ * instead of guessing at them.
+ */
+public final class DictionaryLoader {
+
+    /**
+     * The outcome of loading one dictionary file.
+     */
+    public static final class Result {
+
+        /**
+         * The parsed dictionary.
+         */
+        private final Map<String, String> dictionary;
+
+        /**
+         * The rejected lines, each as {@code "<line number>: <text>"}.
+         */
+        private final List<String> rejected;
+
+        /**
+         * Time taken to load, in nanoseconds.
+         */
+        private final long nanos;
+
+        /**
+         * Constructor.
+         */
+        private Result(Map<String, String> dictionary, List<String> rejected,
+                long nanos) {
+            this.dictionary = dictionary;
+            this.rejected = Collections.unmodifiableList(rejected);
+            this.nanos = nanos;
+        }
+
+        /**
+         * Returns the parsed dictionary.
+         *
+         * @return the word to definition map
+         */
+        public Map<String, String> dictionary() {
+            return this.dictionary;
+        }
+
+        /**
+         * Returns the lines that were not of the form
+         * {@code word, definition}, each as {@code "<line number>: <text>"}.
+         *
+         * @return the rejected lines
+         */
+        public List<String> rejected() {
+            return this.rejected;
+        }
+
+        /**
+         * Returns the time taken to load, in nanoseconds.
+         *
+         * @return the load time
+         */
+        public long nanos() {
+            return this.nanos;
+        }
+
+    }
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Files smaller than this many bytes per thread are parsed by fewer
+     * threads; splitting tiny files costs more than it saves.
+     */
+    private static final long MIN_RANGE_BYTES = 1 << 20;
+
+    /**
+     * Largest range parsed as one unit, bounding the copy buffer per range.
+     */
+    private static final long MAX_RANGE_BYTES = 64 << 20;
+
+    /**
+     * The entries and rejected lines parsed from one range of the file.
+     */
+    private static final class Chunk {
+
+        /**
+         * Parsed words, in file order.
+         */
+        String[] words = new String[256];
+
+        /**
+         * Parsed definitions, parallel to {@code words}.
+         */
+        String[] definitions = new String[256];
+
+        /**
+         * Number of parsed entries.
+         */
+        int count;
+
+        /**
+         * Number of lines in the range.
+         */
+        int lines;
+
+        /**
+         * Line numbers within the range (from 1) of the rejected lines.
+         */
+        List<Integer> rejectedLines = new ArrayList<>();
+
+        /**
+         * Text of the rejected lines, parallel to {@code rejectedLines}.
+         */
+        List<String> rejectedText = new ArrayList<>();
+
+        void add(String word, String definition) {
+            if (this.count == this.words.length) {
+                this.words = Arrays.copyOf(this.words, this.count * 2);
+                this.definitions = Arrays.copyOf(this.definitions,
+                        this.count * 2);
+            }
+            this.words[this.count] = word;
+            this.definitions[this.count] = definition;
+            this.count++;
+        }
+
+    }
+
+    /**
+     * No-argument constructor--private to prevent instantiation.
+     */
+    private DictionaryLoader() {
+    }
+
+    /**
+     * Returns the offset just past the first {@code '\n'} at or after
+     * {@code position}, or {@code size} if there is none.
+     */
+    private static long nextLineStart(FileChannel channel, long position,
+            long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long pos = position;
+        while (pos < size) {
+            buffer.clear();
+            int read = channel.read(buffer, pos);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += read;
+        }
+        return size;
+    }
+
+    /**
+     * Parses the lines of {@code bytes}. The word is everything before the
+     * first comma and the definition everything after it less one leading
+     * space; blank lines are skipped, and lines without a comma or with an
+     * empty word or definition are rejected. Only the word and definition
+     * {@code String}s are allocated for a good line.
+     */
+    private static Chunk parse(byte[] bytes) {
+        Chunk chunk = new Chunk();
+        int lineStart = 0;
+        if (bytes.length >= 3 && (bytes[0] & 0xFF) == 0xEF
+                && (bytes[1] & 0xFF) == 0xBB && (bytes[2] & 0xFF) == 0xBF) {
+            lineStart = 3;
+        }
+        while (lineStart < bytes.length) {
+            int lineEnd = lineStart;
+            while (lineEnd < bytes.length && bytes[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            int next = lineEnd + 1;
+            if (lineEnd > lineStart && bytes[lineEnd - 1] == '\r') {
+                lineEnd--;
+            }
+            chunk.lines++;
+
+            if (lineEnd > lineStart) {
+                int comma = lineStart;
+                while (comma < lineEnd && bytes[comma] != ',') {
+                    comma++;
+                }
+                int definitionStart = comma + 1;
+                if (definitionStart < lineEnd
+                        && bytes[definitionStart] == ' ') {
+                    definitionStart++;
+                }
+                if (comma == lineStart || definitionStart >= lineEnd) {
+                    chunk.rejectedLines.add(chunk.lines);
+                    chunk.rejectedText.add(new String(bytes, lineStart,
+                            lineEnd - lineStart, StandardCharsets.UTF_8));
+                } else {
+                    chunk.add(
+                            new String(bytes, lineStart, comma - lineStart,
+                                    StandardCharsets.UTF_8),
+                            new String(bytes, definitionStart,
+                                    lineEnd - definitionStart,
+                                    StandardCharsets.UTF_8));
+                }
+            }
+            lineStart = next;
+        }
+        return chunk;
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Reads the dictionary file {@code fileName} with one thread per
+     * available processor.
+     *
+     * @param fileName
+     *            the name of the dictionary file
+     * @param reversed
+     *            whether to map definitions to words
+     * @return the dictionary, the rejected lines and the load time
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public static Result load(String fileName, boolean reversed)
+            throws IOException {
+        return load(fileName, reversed,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Reads the UTF-8 dictionary file {@code fileName} of
+     * {@code word, definition} lines. The file is memory mapped and split at
+     * line boundaries into ranges that are parsed in parallel straight from
+     * bytes, without a {@code String} per line. Blank lines are skipped;
+     * lines without a comma or with an empty word or definition are reported
+     * in the result rather than added. When a word occurs more than once the
+     * last line wins.
+     *
+     * @param fileName
+     *            the name of the dictionary file
+     * @param reversed
+     *            whether to map definitions to words
+     * @param threads
+     *            the number of ranges to parse at the same time
+     * @return the dictionary, the rejected lines and the load time
+     * @throws IOException
+     *             if the file cannot be read
+     * @requires threads > 0
+     */
+    public static Result load(String fileName, boolean reversed, int threads)
+            throws IOException {
+        assert threads > 0 : "Violation of: threads > 0";
+
+        long start = System.nanoTime();
+        final FileChannel channel = FileChannel.open(Paths.get(fileName),
+                StandardOpenOption.READ);
+        List<Chunk> chunks = new ArrayList<>();
+        try {
+            long size = channel.size();
+            int ranges = (int) Math.max(1,
+                    Math.min(threads, size / MIN_RANGE_BYTES));
+            ranges = (int) Math.max(ranges,
+                    (size + MAX_RANGE_BYTES - 1) / MAX_RANGE_BYTES);
+            long[] bounds = new long[ranges + 1];
+            bounds[ranges] = size;
+            for (int i = 1; i < ranges; i++) {
+                bounds[i] = Math.max(bounds[i - 1],
+                        nextLineStart(channel, size / ranges * i, size));
+            }
+
+            List<Callable<Chunk>> tasks = new ArrayList<>();
+            for (int i = 0; i < ranges; i++) {
+                final long lo = bounds[i];
+                final long hi = bounds[i + 1];
+                tasks.add(new Callable<Chunk>() {
+                    @Override
+                    public Chunk call() throws IOException {
+                        byte[] bytes = new byte[(int) (hi - lo)];
+                        if (bytes.length > 0) {
+                            channel.map(FileChannel.MapMode.READ_ONLY, lo,
+                                    hi - lo).get(bytes);
+                        }
+                        return parse(bytes);
+                    }
+                });
+            }
+
+            if (ranges == 1) {
+                chunks.add(tasks.get(0).call());
+            } else {
+                ExecutorService pool = Executors
+                        .newFixedThreadPool(Math.min(threads, ranges));
+                try {
+                    for (Future<Chunk> future : pool.invokeAll(tasks)) {
+                        chunks.add(future.get());
+                    }
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException(
+                            "Interrupted loading " + fileName);
+                } catch(ExecutionException e) {
+                    throw new IOException("Error loading " + fileName,
+                            e.getCause());
+                } finally {
+                    pool.shutdown();
+                }
+            }
+        } catch(IOException e) {
+            throw e;
+        } catch(Exception e) {
+            throw new IOException("Error loading " + fileName, e);
+        } finally {
+            channel.close();
+        }
+
+        int entries = 0;
+        for (Chunk chunk : chunks) {
+            entries += chunk.count;
+        }
+        Map<String, String> dictionary = new HashMap<>(
+                Math.max(16, (int) (entries / 0.75f) + 1));
+        List<String> rejected = new ArrayList<>();
+        int linesBefore = 0;
+        for (Chunk chunk : chunks) {
+            for (int i = 0; i < chunk.count; i++) {
+                if (reversed) {
+                    dictionary.put(chunk.definitions[i], chunk.words[i]);
+                } else {
+                    dictionary.put(chunk.words[i], chunk.definitions[i]);
+                }
+            }
+            for (int i = 0; i < chunk.rejectedLines.size(); i++) {
+                rejected.add((linesBefore + chunk.rejectedLines.get(i))
+                        + ": " + chunk.rejectedText.get(i));
+            }
+            linesBefore += chunk.lines;
+        }
+
+        return new Result(dictionary, rejected, System.nanoTime() - start);
+    }
+
+}
@@ -0,0 +1,460 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.io.*;
+
+/**
+ * {@code DictionaryRegistry} of language pairs backed by dictionary files.
+ * Registering a pair is cheap; its dictionary is read on first use, different
+ * pairs can load concurrently, and a pair is never loaded twice at the same
+ * time. Loaded pairs are charged an estimated heap size, and the least
+ * recently used ones can be evicted to stay under a memory budget.
+ */
+public final class DictionaryRegistry {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Estimated heap bytes per dictionary entry, not counting characters: two
+     * {@code String} headers with their arrays plus a {@code HashMap} node and
+     * table slot.
+     */
+    private static final long ENTRY_OVERHEAD = 2 * 40 + 32 + 8;
+
+    /**
+     * A registered language pair and its lazily loaded dictionary.
+     */
+    private static final class Pair {
+
+        /**
+         * What the dictionary is built from, for error messages.
+         */
+        final String source;
+
+        /**
+         * Builds the dictionary; run at most once per load.
+         */
+        final Callable<Map<String, String>> loader;
+
+        /**
+         * The pending or finished load, or null when not loaded.
+         */
+        final AtomicReference<FutureTask<Map<String, String>>> load =
+                new AtomicReference<>();
+
+        /**
+         * Estimated heap bytes of the loaded dictionary, or 0. Set and
+         * cleared only while holding the pair, together with {@code load},
+         * so it is never positive while {@code load} is null.
+         */
+        volatile long bytes;
+
+        /**
+         * {@code System.nanoTime} of the last lookup of this pair.
+         */
+        volatile long lastUsed;
+
+        Pair(String source, Callable<Map<String, String>> loader) {
+            this.source = source;
+            this.loader = loader;
+        }
+
+    }
+
+    /**
+     * Registered pairs keyed by {@code key(source, target)}.
+     */
+    private final ConcurrentMap<String, Pair> pairs =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Memory budget in bytes, or 0 for no budget.
+     */
+    private final long maxBytes;
+
+    /**
+     * Estimates the heap size of {@code dictionary} in bytes.
+     */
+    private static long estimateBytes(Map<String, String> dictionary) {
+        long bytes = 0;
+        for (Map.Entry<String, String> entry : dictionary.entrySet()) {
+            bytes += ENTRY_OVERHEAD
+                    + 2L * (entry.getKey().length()
+                            + entry.getValue().length());
+        }
+        return bytes;
+    }
+
+    /**
+     * Evicts least recently used pairs other than {@code keep} until the
+     * total estimated size fits the budget.
+     */
+    private void enforceBudget(Pair keep) {
+        if (this.maxBytes <= 0) {
+            return;
+        }
+        while (this.memoryUsage() > this.maxBytes) {
+            Pair victim = null;
+            for (Pair pair : this.pairs.values()) {
+                if (pair != keep && pair.bytes > 0 && (victim == null
+                        || pair.lastUsed - victim.lastUsed < 0)) {
+                    victim = pair;
+                }
+            }
+            if (victim == null || !this.unload(victim)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drops the dictionary of {@code pair} if it has finished loading;
+     * returns whether it did.
+     */
+    private boolean unload(Pair pair) {
+        synchronized (pair) {
+            FutureTask<Map<String, String>> task = pair.load.get();
+            if (task == null || !task.isDone()) {
+                return false;
+            }
+            pair.load.set(null);
+            pair.bytes = 0;
+            return true;
+        }
+    }
+
+    /**
+     * Returns a pair that reads {@code fileName} when loaded; the load fails
+     * if the file cannot be read.
+     */
+    private static Pair fileLoader(final String fileName,
+            final boolean reversed) {
+        return new Pair(fileName, new Callable<Map<String, String>>() {
+            @Override
+            public Map<String, String> call() throws IOException {
+                DictionaryLoader.Result result = DictionaryLoader.load(
+                        fileName, reversed);
+                for (String line : result.rejected()) {
+                    System.err.println("Rejected " + fileName + " line "
+                            + line);
+                }
+                return Collections.unmodifiableMap(result.dictionary());
+            }
+        });
+    }
+
+    /**
+     * Returns a pair that composes {@code source -> pivot} with
+     * {@code pivot -> target} when loaded.
+     */
+    private Pair pivotLoader(final String source, final String pivot,
+            final String target) {
+        return new Pair(key(source, pivot) + "+" + key(pivot, target),
+                new Callable<Map<String, String>>() {
+                    @Override
+                    public Map<String, String> call() throws IOException {
+                        Map<String, String> first = DictionaryRegistry.this
+                                .get(source, pivot);
+                        Map<String, String> second = DictionaryRegistry.this
+                                .get(pivot, target);
+                        if (first == null || second == null) {
+                            throw new IOException("Missing pivot leg");
+                        }
+                        return Collections.unmodifiableMap(
+                                compose(first, second));
+                    }
+                });
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor; loaded pairs are never evicted automatically.
+     */
+    public DictionaryRegistry() {
+        this(0);
+    }
+
+    /**
+     * Constructor with a memory budget.
+     *
+     * @param maxBytes
+     *            the estimated heap bytes loaded pairs may use before the
+     *            least recently used ones are evicted, or 0 for no budget
+     */
+    public DictionaryRegistry(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Language every registered dictionary is assumed to share, used to pivot
+     * between two languages without a direct dictionary.
+     */
+    public static final String DEFAULT_PIVOT = "en";
+
+    /**
+     * Composes {@code first} with {@code second} into a direct map, so each
+     * word costs a single lookup instead of two. Words whose definition in
+     * {@code first} has no entry in {@code second} are left out.
+     *
+     * @param first
+     *            the source to pivot dictionary
+     * @param second
+     *            the pivot to target dictionary
+     * @return the source to target dictionary
+     * @ensures <pre>
+     * compose = {(w, second(first(w))):
+     *   w is in DOMAIN(first) and first(w) is in DOMAIN(second)}
+     * </pre>
+     */
+    public static Map<String, String> compose(Map<String, String> first,
+            Map<String, String> second) {
+        assert first != null : "Violation of: first is not null";
+        assert second != null : "Violation of: second is not null";
+
+        Map<String, String> composed = new HashMap<>();
+        for (Map.Entry<String, String> entry : first.entrySet()) {
+            String definition = second.get(entry.getValue());
+            if (definition != null) {
+                composed.put(entry.getKey(), definition);
+            }
+        }
+        return composed;
+    }
+
+    /**
+     * Returns the key naming the pair {@code source -> target}.
+     *
+     * @param source
+     *            the source language code
+     * @param target
+     *            the target language code
+     * @return the pair key
+     */
+    public static String key(String source, String target) {
+        return source + "-" + target;
+    }
+
+    /**
+     * Registers the dictionary file {@code fileName} of
+     * {@code word, definition} lines as {@code source -> target}, and the
+     * reverse pair {@code target -> source}. Nothing is read until the pair is
+     * first used.
+     *
+     * @param source
+     *            the language of the words
+     * @param target
+     *            the language of the definitions
+     * @param fileName
+     *            the dictionary file
+     * @updates this
+     */
+    public void register(String source, String target, String fileName) {
+        assert source != null : "Violation of: source is not null";
+        assert target != null : "Violation of: target is not null";
+        assert fileName != null : "Violation of: fileName is not null";
+
+        this.pairs.put(key(source, target), fileLoader(fileName, false));
+        this.pairs.put(key(target, source), fileLoader(fileName, true));
+    }
+
+    /**
+     * Registers every file named {@code <source>-<target>.txt} in
+     * {@code directory}, for example {@code en-pl.txt}.
+     *
+     * @param directory
+     *            the directory to scan
+     * @return the number of dictionary files registered
+     * @updates this
+     */
+    public int discover(String directory) {
+        File[] files = new File(directory).listFiles();
+        if (files == null) {
+            System.err.println("Error listing directory " + directory);
+            return 0;
+        }
+        int count = 0;
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isFile() && name.matches("[A-Za-z_]+-[A-Za-z_]+\\.txt")) {
+                int dash = name.indexOf('-');
+                this.register(name.substring(0, dash),
+                        name.substring(dash + 1, name.length() - 4),
+                        file.getPath());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reports whether {@code source -> target} is registered.
+     *
+     * @param source
+     *            the source language code
+     * @param target
+     *            the target language code
+     * @return true iff the pair is registered
+     */
+    public boolean contains(String source, String target) {
+        return this.pairs.containsKey(key(source, target));
+    }
+
+    /**
+     * Returns the keys of all registered pairs.
+     *
+     * @return the registered pair keys
+     */
+    public Set<String> pairs() {
+        return Collections.unmodifiableSet(this.pairs.keySet());
+    }
+
+    /**
+     * Returns the dictionary of {@code source -> target}, loading it first if
+     * needed. Concurrent callers of the same pair share one load. A pair that
+     * is not registered but can be reached through {@code DEFAULT_PIVOT} is
+     * registered as a pivot pair first.
+     *
+     * @param source
+     *            the source language code
+     * @param target
+     *            the target language code
+     * @return the dictionary, or null if the pair is not registered and
+     *         cannot be pivoted, or its dictionary cannot be loaded
+     */
+    public Map<String, String> get(String source, String target) {
+        Pair pair = this.pairs.get(key(source, target));
+        if (pair == null) {
+            if (source.equals(DEFAULT_PIVOT) || target.equals(DEFAULT_PIVOT)
+                    || !this.contains(source, DEFAULT_PIVOT)
+                    || !this.contains(DEFAULT_PIVOT, target)) {
+                return null;
+            }
+            return this.pivot(source, DEFAULT_PIVOT, target);
+        }
+        pair.lastUsed = System.nanoTime();
+
+        FutureTask<Map<String, String>> task;
+        while ((task = pair.load.get()) == null) {
+            FutureTask<Map<String, String>> created =
+                    new FutureTask<>(pair.loader);
+            if (pair.load.compareAndSet(null, created)) {
+                created.run();
+            }
+        }
+
+        Map<String, String> dictionary;
+        try {
+            dictionary = task.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch(ExecutionException e) {
+            System.err.println("Error loading " + pair.source + ": "
+                    + e.getCause().getMessage());
+            pair.load.compareAndSet(task, null);
+            return null;
+        }
+
+        if (pair.bytes == 0 && pair.load.get() == task) {
+            long bytes = estimateBytes(dictionary);
+            boolean charged = false;
+            synchronized (pair) {
+                if (pair.bytes == 0 && pair.load.get() == task) {
+                    pair.bytes = bytes;
+                    charged = true;
+                }
+            }
+            if (charged) {
+                this.enforceBudget(pair);
+            }
+        }
+        return dictionary;
+    }
+
+    /**
+     * Returns the dictionary of {@code source -> target} obtained by
+     * composing {@code source -> pivot} with {@code pivot -> target}. The
+     * composed map is built once, on first use, and then cached and charged
+     * against the memory budget like any other pair; if evicted it is
+     * composed again on its next use. A directly registered
+     * {@code source -> target} pair takes precedence.
+     *
+     * @param source
+     *            the source language code
+     * @param pivot
+     *            the language shared by both dictionaries
+     * @param target
+     *            the target language code
+     * @return the composed dictionary, or null if either leg is missing
+     * @updates this
+     */
+    public Map<String, String> pivot(String source, String pivot,
+            String target) {
+        if (!this.contains(source, pivot) || !this.contains(pivot, target)) {
+            return null;
+        }
+        this.pairs.putIfAbsent(key(source, target),
+                this.pivotLoader(source, pivot, target));
+        return this.get(source, target);
+    }
+
+    /**
+     * Returns the estimated heap bytes used by {@code source -> target}, or 0
+     * if it is not loaded.
+     *
+     * @param source
+     *            the source language code
+     * @param target
+     *            the target language code
+     * @return the estimated size of the pair
+     */
+    public long memoryUsage(String source, String target) {
+        Pair pair = this.pairs.get(key(source, target));
+        return pair == null ? 0 : pair.bytes;
+    }
+
+    /**
+     * Returns the estimated heap bytes used by all loaded pairs.
+     *
+     * @return the estimated size of all loaded pairs
+     */
+    public long memoryUsage() {
+        long bytes = 0;
+        for (Pair pair : this.pairs.values()) {
+            bytes += pair.bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * Evicts every loaded pair that has not been used for {@code idleMillis}
+     * milliseconds. An evicted pair is reloaded on its next use.
+     *
+     * @param idleMillis
+     *            the idle time after which a pair is evicted
+     * @return the number of pairs evicted
+     * @updates this
+     */
+    public int evictIdle(long idleMillis) {
+        long now = System.nanoTime();
+        int count = 0;
+        for (Pair pair : this.pairs.values()) {
+            if (pair.bytes > 0
+                    && now - pair.lastUsed > idleMillis * 1_000_000L
+                    && this.unload(pair)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+}
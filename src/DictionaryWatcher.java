@@ -0,0 +1,193 @@
+import java.util.concurrent.*;
+import java.io.*;
+import java.nio.file.*;
+
+/**
+ * {@code DictionaryWatcher} keeping a {@code VersionedDictionary} in sync with
+ * its dictionary file. A background thread waits on a {@code WatchService},
+ * parses the changed file off the translation path and swaps the result in
+ * with {@code VersionedDictionary.replaceAll}; translations already holding a
+ * snapshot finish on the old version. A file that cannot be read, or that
+ * looks caught in the middle of being saved, leaves the current version in
+ * place.
+ */
+public final class DictionaryWatcher implements Closeable {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Time to wait for further change events before reloading, so that an
+     * editor writing the file in several steps causes one reload.
+     */
+    private static final long SETTLE_MILLIS = 50;
+
+    /**
+     * The watched dictionary file.
+     */
+    private final Path file;
+
+    /**
+     * Whether the file is read definitions to words.
+     */
+    private final boolean reversed;
+
+    /**
+     * The dictionary kept in sync with the file.
+     */
+    private final VersionedDictionary dictionary;
+
+    /**
+     * Watch service registered on the directory of the file.
+     */
+    private final WatchService watchService;
+
+    /**
+     * The watching thread, or null if not started.
+     */
+    private Thread thread;
+
+    /**
+     * Reports whether {@code key} has an event for the watched file.
+     */
+    private boolean touchesFile(WatchKey key) {
+        boolean touched = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || this.file.getFileName().equals(event.context())) {
+                touched = true;
+            }
+        }
+        key.reset();
+        return touched;
+    }
+
+    /**
+     * Waits for changes to the file and reloads it until closed.
+     */
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = this.watchService.take();
+                if (!this.touchesFile(key)) {
+                    continue;
+                }
+                key = this.watchService.poll(SETTLE_MILLIS,
+                        TimeUnit.MILLISECONDS);
+                while (key != null) {
+                    this.touchesFile(key);
+                    key = this.watchService.poll(SETTLE_MILLIS,
+                            TimeUnit.MILLISECONDS);
+                }
+                this.reload();
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch(ClosedWatchServiceException e) {
+            return;
+        }
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor; call {@code start} to begin watching.
+     *
+     * @param fileName
+     *            the dictionary file to watch
+     * @param reversed
+     *            whether to map definitions to words
+     * @param dictionary
+     *            the dictionary to keep in sync with the file
+     * @throws IOException
+     *             if the directory of the file cannot be watched
+     */
+    public DictionaryWatcher(String fileName, boolean reversed,
+            VersionedDictionary dictionary) throws IOException {
+        this.file = Paths.get(fileName).toAbsolutePath();
+        this.reversed = reversed;
+        this.dictionary = dictionary;
+        this.watchService = this.file.getFileSystem().newWatchService();
+        this.file.getParent().register(this.watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Starts watching on a daemon thread.
+     *
+     * @updates this
+     */
+    public synchronized void start() {
+        if (this.thread != null) {
+            return;
+        }
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                DictionaryWatcher.this.watch();
+            }
+        }, "dictionary-watcher " + this.file.getFileName());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Reads the file now and publishes it as a new version, reporting the
+     * load time and any rejected lines. The current version is kept if the
+     * file cannot be read, has no entries, or has more rejected lines than
+     * entries, as a file truncated or half written by a save does; the
+     * next change to the file is loaded as usual.
+     *
+     * @return the load result, or null if it was not published
+     * @updates this.dictionary
+     */
+    public DictionaryLoader.Result reload() {
+        DictionaryLoader.Result result;
+        try {
+            result = DictionaryLoader.load(this.file.toString(),
+                    this.reversed);
+        } catch(IOException e) {
+            System.err.println("Error reloading " + this.file + ": "
+                    + e.getMessage());
+            return null;
+        }
+        int entries = result.dictionary().size();
+        if (entries == 0 || result.rejected().size() > entries) {
+            System.err.println("Error reloading " + this.file + ": "
+                    + entries + " entries, " + result.rejected().size()
+                    + " rejected lines; keeping version "
+                    + this.dictionary.snapshot().version());
+            return null;
+        }
+        VersionedDictionary.Snapshot snapshot = this.dictionary
+                .replaceAll(result.dictionary());
+        System.out.printf("Reloaded %s: version %d, %d entries, %.3f ms, "
+                + "%d rejected lines%n", this.file.getFileName(),
+                snapshot.version(), result.dictionary().size(),
+                result.nanos() / 1e6, result.rejected().size());
+        for (String line : result.rejected()) {
+            System.err.println("Rejected " + line);
+        }
+        return result;
+    }
+
+    /**
+     * Stops watching.
+     *
+     * @throws IOException
+     *             if the watch service cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.watchService.close();
+    }
+
+}
@@ -0,0 +1,389 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+
+/**
+ * {@code FairScheduler} translating files so that small jobs are not stuck
+ * behind huge ones. Each job is cut into chunks of about
+ * {@code chunkChars} characters, and the workers always run the chunk with
+ * the earliest virtual finish time, as in weighted fair queuing: a job's
+ * virtual time advances by the size of each chunk it runs, divided by its
+ * weight, and a new job starts at the current virtual time. A small job's
+ * only chunk is estimated from its file size and so finishes earliest, and
+ * runs next; a huge job still gets its share of chunks and is never
+ * starved.
+ *
+ * <p>
+ * The chunks of one job run one at a time, in order. Output is the same as
+ * {@code Main.translateFile}.
+ */
+public final class FairScheduler implements Closeable {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * A submitted job and its position in virtual time.
+     */
+    private static final class Job {
+
+        /**
+         * The source file, for error messages.
+         */
+        final String inFileName;
+
+        /**
+         * The remaining input.
+         */
+        final BufferedReader in;
+
+        /**
+         * The translated output.
+         */
+        final Writer out;
+
+        /**
+         * The word to definition map.
+         */
+        final Map<String, String> dictionary;
+
+        /**
+         * The tokenizer profile of the source.
+         */
+        final TokenizerProfile profile;
+
+        /**
+         * The weight; a job of weight 2 gets twice the share of weight 1.
+         */
+        final double weight;
+
+        /**
+         * The number of characters translated, once done.
+         */
+        final CompletableFuture<Long> result = new CompletableFuture<>();
+
+        /**
+         * Estimated number of characters not yet translated.
+         */
+        long remaining;
+
+        /**
+         * Number of characters translated so far.
+         */
+        long done;
+
+        /**
+         * Virtual start time of the next chunk.
+         */
+        double start;
+
+        /**
+         * Virtual finish time of the next chunk.
+         */
+        double finish;
+
+        /**
+         * Submission order, to break ties.
+         */
+        final long sequence;
+
+        /**
+         * Constructor.
+         */
+        Job(String inFileName, BufferedReader in, Writer out,
+                Map<String, String> dictionary, TokenizerProfile profile,
+                double weight, long size, long sequence) {
+            this.inFileName = inFileName;
+            this.in = in;
+            this.out = out;
+            this.dictionary = dictionary;
+            this.profile = profile;
+            this.weight = weight;
+            this.remaining = size;
+            this.sequence = sequence;
+        }
+
+    }
+
+    /**
+     * The characters of input per chunk.
+     */
+    private final int chunkChars;
+
+    /**
+     * Jobs ready for their next chunk, earliest virtual finish first.
+     */
+    private final PriorityQueue<Job> ready = new PriorityQueue<>(16,
+            new Comparator<Job>() {
+                @Override
+                public int compare(Job a, Job b) {
+                    int c = Double.compare(a.finish, b.finish);
+                    return c != 0 ? c : Long.compare(a.sequence, b.sequence);
+                }
+            });
+
+    /**
+     * The worker threads.
+     */
+    private final Thread[] workers;
+
+    /**
+     * The virtual time: the start time of the chunk started last.
+     */
+    private double virtualTime;
+
+    /**
+     * Number of jobs submitted.
+     */
+    private long submitted;
+
+    /**
+     * Whether {@code close} has been called.
+     */
+    private boolean closed;
+
+    /**
+     * Sets the virtual finish time of the next chunk of {@code job} from its
+     * estimated remaining size.
+     */
+    private void tag(Job job) {
+        long cost = Math.max(Math.min(job.remaining, this.chunkChars), 1);
+        job.finish = job.start + cost / job.weight;
+    }
+
+    /**
+     * Translates the next chunk of {@code job}: whole lines, at least
+     * {@code chunkChars} characters unless the input ends. Returns whether
+     * the input has ended.
+     */
+    private boolean runChunk(Job job, StringBuilder buffer)
+            throws IOException {
+        buffer.setLength(0);
+        int read = 0;
+        String line;
+        while (read < this.chunkChars && (line = job.in.readLine()) != null) {
+            Main.translateInto(line, job.dictionary, job.profile, buffer);
+            buffer.append('\n');
+            read += line.length() + 1;
+        }
+        job.out.append(buffer);
+        job.done += read;
+        job.remaining = Math.max(job.remaining - read, 0);
+        if (read < this.chunkChars) {
+            return true;
+        }
+        job.start += read / job.weight;
+        return false;
+    }
+
+    /**
+     * Closes the files of {@code job} and completes it, exceptionally if
+     * {@code error} is not null or closing fails.
+     */
+    private static void finish(Job job, Exception error) {
+        Exception failure = error;
+        try {
+            job.in.close();
+            job.out.close();
+        } catch(IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        if (failure == null) {
+            job.result.complete(job.done);
+        } else {
+            job.result.completeExceptionally(new IOException(
+                    "Error translating " + job.inFileName, failure));
+        }
+    }
+
+    /**
+     * Runs chunks until closed and no job is left.
+     */
+    private void work() {
+        StringBuilder buffer = new StringBuilder(
+                Math.min(this.chunkChars, 1 << 16) * 2);
+        while (true) {
+            Job job;
+            synchronized (this) {
+                while (this.ready.isEmpty() && !this.closed) {
+                    try {
+                        this.wait();
+                    } catch(InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                job = this.ready.poll();
+                if (job == null) {
+                    return;
+                }
+                this.virtualTime = Math.max(this.virtualTime, job.start);
+            }
+
+            boolean ended;
+            Exception error = null;
+            try {
+                ended = this.runChunk(job, buffer);
+            } catch(IOException e) {
+                ended = true;
+                error = e;
+            } catch(RuntimeException e) {
+                ended = true;
+                error = e;
+            }
+
+            if (ended) {
+                finish(job, error);
+            } else {
+                synchronized (this) {
+                    this.tag(job);
+                    this.ready.add(job);
+                    this.notify();
+                }
+            }
+        }
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor; call {@code start} to begin running jobs.
+     *
+     * @param chunkChars
+     *            the characters of input per chunk
+     * @param threads
+     *            the number of worker threads
+     * @requires chunkChars > 0 and threads > 0
+     */
+    public FairScheduler(int chunkChars, int threads) {
+        assert chunkChars > 0 : "Violation of: chunkChars > 0";
+        assert threads > 0 : "Violation of: threads > 0";
+
+        this.chunkChars = chunkChars;
+        this.workers = new Thread[threads];
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Starts the worker threads, as daemons.
+     *
+     * @updates this
+     */
+    public synchronized void start() {
+        if (this.workers[0] != null) {
+            return;
+        }
+        for (int i = 0; i < this.workers.length; i++) {
+            this.workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    FairScheduler.this.work();
+                }
+            }, "fair-scheduler " + i);
+            this.workers[i].setDaemon(true);
+            this.workers[i].start();
+        }
+    }
+
+    /**
+     * Queues the translation of {@code inFileName} into
+     * {@code outFileName}, with the tokenizer profile of its extension
+     * ({@code TokenizerProfile.JAVA} if there is none).
+     *
+     * @param inFileName
+     *            the source file
+     * @param outFileName
+     *            the file to write the translation to
+     * @param dictionary
+     *            the word to definition map
+     * @param weight
+     *            the share of the workers the job gets relative to others
+     * @return the number of characters translated, when done
+     * @throws IOException
+     *             if either file cannot be opened
+     * @throws RejectedExecutionException
+     *             if the scheduler is closed
+     * @requires weight > 0
+     */
+    public Future<Long> submit(String inFileName, String outFileName,
+            Map<String, String> dictionary, double weight)
+            throws IOException {
+        assert weight > 0 : "Violation of: weight > 0";
+
+        TokenizerProfile profile = TokenizerProfile.forFileName(inFileName);
+        if (profile == null) {
+            profile = TokenizerProfile.JAVA;
+        }
+        long size = new File(inFileName).length();
+        BufferedReader in = new BufferedReader(new FileReader(inFileName));
+        Writer out;
+        try {
+            out = new BufferedWriter(new FileWriter(outFileName));
+        } catch(IOException e) {
+            in.close();
+            throw e;
+        }
+
+        synchronized (this) {
+            if (this.closed) {
+                in.close();
+                out.close();
+                throw new RejectedExecutionException("Scheduler closed");
+            }
+            Job job = new Job(inFileName, in, out, dictionary, profile, weight,
+                    size, this.submitted++);
+            job.start = this.virtualTime;
+            this.tag(job);
+            this.ready.add(job);
+            this.notify();
+            return job.result;
+        }
+    }
+
+    /**
+     * Stops accepting jobs, runs those already submitted to completion and
+     * waits for the workers to finish. If the workers were never started,
+     * the submitted jobs are not run: their files are closed and their
+     * results fail.
+     *
+     * @throws InterruptedIOException
+     *             if interrupted while waiting
+     */
+    @Override
+    public void close() throws InterruptedIOException {
+        synchronized (this) {
+            this.closed = true;
+            this.notifyAll();
+        }
+        for (Thread worker : this.workers) {
+            if (worker == null) {
+                continue;
+            }
+            try {
+                worker.join();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted closing");
+            }
+        }
+        while (true) {
+            Job job;
+            synchronized (this) {
+                job = this.ready.poll();
+            }
+            if (job == null) {
+                break;
+            }
+            finish(job, new RejectedExecutionException("Scheduler closed"));
+        }
+    }
+
+}
@@ -0,0 +1,232 @@
+import java.util.*;
+
+/**
+ * {@code FuzzyIndex} finding the dictionary word closest to a misspelled
+ * token, such as {@code public} for {@code pubilc}. It is a SymSpell
+ * deletion index: every word is stored under each string obtained by
+ * deleting up to {@code maxDistance} of its characters, so a lookup only
+ * generates the deletions of the token, collects the words stored under
+ * them and checks each candidate with a bounded edit distance. No other
+ * words are compared, so a lookup costs microseconds however large the
+ * dictionary is.
+ *
+ * <p>
+ * Distances count insertions, deletions, substitutions and transpositions
+ * of adjacent characters. Tokens are allowed one edit per four characters,
+ * and tokens shorter than {@code MIN_LENGTH} are never corrected, so neither
+ * {@code if} nor {@code cast} is turned into a keyword. Tokens with an
+ * uppercase letter are not corrected either, and a word that differs from
+ * the token only in case is never suggested: {@code Boolean} and
+ * {@code Long} are type names, not misspelled {@code boolean} and
+ * {@code long}.
+ *
+ * <p>
+ * A correction must also change the inside of the word: both ends of the
+ * token and the word must agree, so neither is a prefix or suffix of the
+ * other. Plurals and inflections such as {@code imports}, {@code extend}
+ * and {@code thrown} are left alone, as are {@code glass} and
+ * {@code instances}. Replacing a single character is accepted only in
+ * tokens of at least {@code MIN_SUBSTITUTION_LENGTH} characters, so
+ * {@code whale} does not become {@code while}.
+ */
+public final class FuzzyIndex {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Length of the shortest token that is corrected; one edit turns many
+     * shorter identifiers into keywords.
+     */
+    private static final int MIN_LENGTH = 5;
+
+    /**
+     * Length of the shortest token in which a single replaced character is
+     * corrected.
+     */
+    private static final int MIN_SUBSTITUTION_LENGTH = 8;
+
+    /**
+     * The maximum edit distance of a suggestion.
+     */
+    private final int maxDistance;
+
+    /**
+     * The words stored under each of their deletions, and under themselves.
+     */
+    private final Map<String, String[]> deletions = new HashMap<>();
+
+    /**
+     * Adds to {@code output} every string obtained from {@code word} by
+     * deleting at most {@code distance} characters, including {@code word}.
+     */
+    private static void addDeletions(String word, int distance,
+            Set<String> output) {
+        if (!output.add(word) || distance == 0 || word.length() <= 1) {
+            return;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            addDeletions(word.substring(0, i) + word.substring(i + 1),
+                    distance - 1, output);
+        }
+    }
+
+    /**
+     * Returns the edit distance between {@code a} and {@code b}, counting
+     * adjacent transpositions as one edit, or {@code limit + 1} if it is
+     * greater than {@code limit}.
+     */
+    private static int distance(String a, String b, int limit) {
+        if (Math.abs(a.length() - b.length()) > limit) {
+            return limit + 1;
+        }
+        int[] previous2 = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int d = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1),
+                        previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2)
+                        && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d = Math.min(d, previous2[j - 2] + 1);
+                }
+                current[j] = d;
+                rowMin = Math.min(rowMin, d);
+            }
+            if (rowMin > limit) {
+                return limit + 1;
+            }
+            int[] t = previous2;
+            previous2 = previous;
+            previous = current;
+            current = t;
+        }
+        return Math.min(previous[b.length()], limit + 1);
+    }
+
+    /**
+     * Reports whether {@code word} is an acceptable correction of
+     * {@code token}: the two differ only strictly inside both, and not by a
+     * single replaced character unless {@code token} is long.
+     */
+    private static boolean editsInside(String token, String word) {
+        int shorter = Math.min(token.length(), word.length());
+        int prefix = 0;
+        while (prefix < shorter
+                && token.charAt(prefix) == word.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < shorter - prefix
+                && token.charAt(token.length() - 1 - suffix) == word
+                        .charAt(word.length() - 1 - suffix)) {
+            suffix++;
+        }
+        if (prefix == 0 || suffix == 0) {
+            return false;
+        }
+        boolean substitution = token.length() == word.length()
+                && token.length() - prefix - suffix == 1;
+        return !substitution || token.length() >= MIN_SUBSTITUTION_LENGTH;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor; indexes the words of {@code dictionary}.
+     *
+     * @param dictionary
+     *            the word to definition map
+     * @param maxDistance
+     *            the maximum edit distance of a suggestion
+     * @requires maxDistance >= 0
+     */
+    public FuzzyIndex(Map<String, String> dictionary, int maxDistance) {
+        assert maxDistance >= 0 : "Violation of: maxDistance >= 0";
+
+        this.maxDistance = maxDistance;
+        Map<String, List<String>> index = new HashMap<>();
+        Set<String> keys = new HashSet<>();
+        for (String word : dictionary.keySet()) {
+            keys.clear();
+            addDeletions(word, maxDistance, keys);
+            for (String key : keys) {
+                List<String> words = index.get(key);
+                if (words == null) {
+                    words = new ArrayList<>(1);
+                    index.put(key, words);
+                }
+                words.add(word);
+            }
+        }
+        for (Map.Entry<String, List<String>> e : index.entrySet()) {
+            this.deletions.put(e.getKey(),
+                    e.getValue().toArray(new String[e.getValue().size()]));
+        }
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Returns the dictionary word closest to {@code token}, or null if none
+     * is within the allowed distance. Of equally close words the
+     * alphabetically first is returned. Only tokens of at least
+     * {@code MIN_LENGTH} characters, starting with a letter and without
+     * uppercase letters, are looked up, and only words that differ from it
+     * inside, as described above, are returned; meant to be called after an
+     * exact lookup has missed.
+     *
+     * @param token
+     *            the token
+     * @return the closest word, or null
+     */
+    public String closest(String token) {
+        int limit = Math.min(this.maxDistance, token.length() / 4);
+        if (limit == 0 || token.length() < MIN_LENGTH
+                || !Character.isLetter(token.charAt(0))) {
+            return null;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (Character.isUpperCase(token.charAt(i))) {
+                return null;
+            }
+        }
+
+        Set<String> keys = new HashSet<>();
+        addDeletions(token, limit, keys);
+        String best = null;
+        int bestDistance = limit + 1;
+        for (String key : keys) {
+            String[] words = this.deletions.get(key);
+            if (words == null) {
+                continue;
+            }
+            for (String word : words) {
+                if (word.equalsIgnoreCase(token)
+                        || !editsInside(token, word)) {
+                    continue;
+                }
+                int d = distance(token, word, Math.min(limit, bestDistance));
+                if (d < bestDistance || (d == bestDistance && d <= limit
+                        && word.compareTo(best) < 0)) {
+                    best = word;
+                    bestDistance = d;
+                }
+            }
+        }
+        return best;
+    }
+
+}
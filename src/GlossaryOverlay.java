@@ -0,0 +1,189 @@
+import java.util.*;
+
+/**
+ * {@code GlossaryOverlay} layering a small glossary over a shared base
+ * dictionary without copying it, so each team or request can override
+ * terms cheaply. A glossary word is translated by its glossary definition;
+ * a glossary word with a null definition is left untranslated even if the
+ * base dictionary has it; every other word is looked up in the base.
+ *
+ * <p>
+ * A bit set of the glossary words' hashes is checked first, so a word that
+ * is not in the glossary, which is nearly every word, costs one bit test
+ * plus the base lookup. Only the glossary is stored, so hundreds of
+ * overlays can share one base. The base must not change while it is
+ * overlaid; use a {@code VersionedDictionary} snapshot.
+ */
+public final class GlossaryOverlay extends AbstractMap<String, String> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Glossary definition of a word to leave untranslated.
+     */
+    private static final String HIDDEN = new String("");
+
+    /**
+     * The base dictionary.
+     */
+    private final Map<String, String> base;
+
+    /**
+     * The glossary, with {@code HIDDEN} for words to leave untranslated.
+     */
+    private final Map<String, String> glossary = new HashMap<>();
+
+    /**
+     * Bit set of the hashes of the glossary words.
+     */
+    private final long[] filter;
+
+    /**
+     * Returns whether the bit of {@code hash} is set in {@code filter}.
+     */
+    private boolean mayContain(int hash) {
+        long[] bits = this.filter;
+        return (bits[(hash >>> 6) & (bits.length - 1)] & (1L << hash)) != 0;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor.
+     *
+     * @param base
+     *            the shared base dictionary; not copied, and must not change
+     *            while overlaid
+     * @param glossary
+     *            the overriding word to definition map, with null definitions
+     *            for words to leave untranslated; copied
+     */
+    public GlossaryOverlay(Map<String, String> base,
+            Map<String, String> glossary) {
+        this.base = base;
+        int bits = Integer.highestOneBit(Math.max(glossary.size(), 1) * 16);
+        this.filter = new long[Math.max(bits / 64, 1)];
+        for (Map.Entry<String, String> e : glossary.entrySet()) {
+            String word = e.getKey();
+            this.glossary.put(word,
+                    e.getValue() == null ? HIDDEN : e.getValue());
+            int hash = word.hashCode();
+            this.filter[(hash >>> 6) & (this.filter.length - 1)] |= 1L << hash;
+        }
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Returns the definition of {@code key}: from the glossary if it is
+     * there, otherwise from the base dictionary.
+     *
+     * @param key
+     *            the word
+     * @return the definition, or null if {@code key} is untranslated
+     */
+    @Override
+    public String get(Object key) {
+        if (key instanceof String && this.mayContain(key.hashCode())) {
+            String value = this.glossary.get(key);
+            if (value != null) {
+                return value == HIDDEN ? null : value;
+            }
+        }
+        return this.base.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return this.get(key) != null;
+    }
+
+    /**
+     * Returns the number of translated words; linear in the size of the
+     * glossary.
+     *
+     * @return the number of words
+     */
+    @Override
+    public int size() {
+        int size = this.base.size();
+        for (Map.Entry<String, String> e : this.glossary.entrySet()) {
+            boolean inBase = this.base.containsKey(e.getKey());
+            if (e.getValue() == HIDDEN) {
+                size -= inBase ? 1 : 0;
+            } else {
+                size += inBase ? 0 : 1;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the merged entries: the glossary's, then the base's that the
+     * glossary does not override. The view is unmodifiable.
+     *
+     * @return the entries
+     */
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+            @Override
+            public int size() {
+                return GlossaryOverlay.this.size();
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                final Map<String, String> own = GlossaryOverlay.this.glossary;
+                List<Map.Entry<String, String>> shown = new ArrayList<>();
+                for (Map.Entry<String, String> e : own.entrySet()) {
+                    if (e.getValue() != HIDDEN) {
+                        shown.add(new SimpleImmutableEntry<>(e));
+                    }
+                }
+                final Iterator<Map.Entry<String, String>> first = shown
+                        .iterator();
+                final Iterator<Map.Entry<String, String>> second =
+                        GlossaryOverlay.this.base.entrySet().iterator();
+                return new Iterator<Map.Entry<String, String>>() {
+                    private Map.Entry<String, String> next = this.advance();
+
+                    private Map.Entry<String, String> advance() {
+                        if (first.hasNext()) {
+                            return first.next();
+                        }
+                        while (second.hasNext()) {
+                            Map.Entry<String, String> e = second.next();
+                            if (!own.containsKey(e.getKey())) {
+                                return new SimpleImmutableEntry<>(e);
+                            }
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return this.next != null;
+                    }
+
+                    @Override
+                    public Map.Entry<String, String> next() {
+                        if (this.next == null) {
+                            throw new NoSuchElementException();
+                        }
+                        Map.Entry<String, String> e = this.next;
+                        this.next = this.advance();
+                        return e;
+                    }
+                };
+            }
+        };
+    }
+
+}
@@ -0,0 +1,152 @@
+import java.util.*;
+
+/**
+ * {@code HotKeyCache} putting a small direct-mapped cache in front of a
+ * dictionary, for the few keywords and separators that make up most
+ * lookups. Each slot holds a key, its hash and its translation in parallel
+ * arrays, so a hit is one hash, one array index and one reference compare
+ * in the common case. Misses in the dictionary are cached too, since most
+ * tokens are separators and identifiers.
+ *
+ * <p>
+ * Each slot keeps a small saturating count of the hits on its key; every
+ * other key that misses in the slot wears the count down, and only replaces
+ * the key once it reaches zero, so a frequent keyword is not evicted by the
+ * occasional identifier that maps to the same slot. The dictionary
+ * must not change while it is wrapped; wrap a {@code VersionedDictionary}
+ * snapshot. Not safe for concurrent use; give each thread its own cache.
+ */
+public final class HotKeyCache extends AbstractMap<String, String> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Cached translation of a key that is not in the dictionary.
+     */
+    private static final String ABSENT = new String("");
+
+    /**
+     * The hit count at which a slot's count stops growing.
+     */
+    private static final byte MAX_HITS = 15;
+
+    /**
+     * The dictionary.
+     */
+    private final Map<String, String> dictionary;
+
+    /**
+     * {@code 32 - log2(slots)}; the number of slots is a power of two.
+     */
+    private final int shift;
+
+    /**
+     * Hash of the key in each slot.
+     */
+    private final int[] hashes;
+
+    /**
+     * Key in each slot, or null if the slot is empty.
+     */
+    private final String[] keys;
+
+    /**
+     * Translation of the key in each slot, or {@code ABSENT}.
+     */
+    private final String[] values;
+
+    /**
+     * Saturating hit count of the key in each slot; a miss in the slot
+     * decrements it, and the key is replaced when it reaches zero.
+     */
+    private final byte[] hits;
+
+    /**
+     * Returns the slot of {@code hash}.
+     */
+    private int slot(int hash) {
+        return (hash * 0x9E3779B9) >>> this.shift;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor.
+     *
+     * @param dictionary
+     *            the word to definition map; must not change while wrapped
+     * @param slots
+     *            the number of cached keys; rounded up to a power of two
+     * @requires slots > 0
+     */
+    public HotKeyCache(Map<String, String> dictionary, int slots) {
+        assert slots > 0 : "Violation of: slots > 0";
+
+        int n = Integer.highestOneBit(Math.max(slots - 1, 1)) << 1;
+        this.dictionary = dictionary;
+        this.shift = 32 - Integer.numberOfTrailingZeros(n);
+        this.hashes = new int[n];
+        this.keys = new String[n];
+        this.values = new String[n];
+        this.hits = new byte[n];
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Returns the translation of {@code key}, from the cache if it is there.
+     *
+     * @param key
+     *            the word
+     * @return the definition, or null if {@code key} is not in the dictionary
+     */
+    @Override
+    public String get(Object key) {
+        if (!(key instanceof String)) {
+            return this.dictionary.get(key);
+        }
+        String word = (String) key;
+        int hash = word.hashCode();
+        int slot = this.slot(hash);
+        String cached = this.keys[slot];
+        if (cached == word || (cached != null && this.hashes[slot] == hash
+                && cached.equals(word))) {
+            if (this.hits[slot] < MAX_HITS) {
+                this.hits[slot]++;
+            }
+            String value = this.values[slot];
+            return value == ABSENT ? null : value;
+        }
+
+        String value = this.dictionary.get(word);
+        if (--this.hits[slot] <= 0) {
+            this.hashes[slot] = hash;
+            this.keys[slot] = word;
+            this.values[slot] = value == null ? ABSENT : value;
+            this.hits[slot] = 1;
+        }
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return this.get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return this.dictionary.size();
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return Collections.unmodifiableMap(this.dictionary).entrySet();
+    }
+
+}
@@ -0,0 +1,486 @@
+import java.util.*;
+
+/**
+ * {@code IncrementalTranslation} keeping a document and its translation in
+ * step as the document is edited, for editor integrations. Each edit
+ * re-translates only the lines it touches and returns the matching edit to
+ * apply to the translated text.
+ *
+ * <p>
+ * Lines are kept in a treap ordered by position. Each node holds one line on
+ * both sides and the line count and lengths of its subtree, so mapping an
+ * offset to its line and back costs {@code O(log lines)}, and an edit
+ * replaces the lines it touches by any number of new lines with one split
+ * and one merge, in {@code O(log lines)} plus the length of those lines,
+ * however many lines it adds or removes.
+ */
+public final class IncrementalTranslation {
+
+    /**
+     * A replacement of {@code length} characters at {@code offset} by
+     * {@code text}.
+     */
+    public static final class Edit {
+
+        /**
+         * The offset of the first replaced character.
+         */
+        private final int offset;
+
+        /**
+         * The number of replaced characters.
+         */
+        private final int length;
+
+        /**
+         * The replacement text.
+         */
+        private final String text;
+
+        /**
+         * Constructor.
+         *
+         * @param offset
+         *            the offset of the first replaced character
+         * @param length
+         *            the number of replaced characters
+         * @param text
+         *            the replacement text
+         */
+        public Edit(int offset, int length, String text) {
+            this.offset = offset;
+            this.length = length;
+            this.text = text;
+        }
+
+        /**
+         * Returns the offset of the first replaced character.
+         *
+         * @return the offset
+         */
+        public int offset() {
+            return this.offset;
+        }
+
+        /**
+         * Returns the number of replaced characters.
+         *
+         * @return the length
+         */
+        public int length() {
+            return this.length;
+        }
+
+        /**
+         * Returns the replacement text.
+         *
+         * @return the text
+         */
+        public String text() {
+            return this.text;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + this.offset + ", " + this.length + ", \""
+                    + this.text + "\")";
+        }
+
+    }
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * A line of the document and its translation, and the treap node holding
+     * them.
+     */
+    private static final class Line {
+
+        /**
+         * The document line, without its terminator.
+         */
+        final String source;
+
+        /**
+         * The translated line, without its terminator.
+         */
+        final String translated;
+
+        /**
+         * The heap priority.
+         */
+        final int priority;
+
+        /**
+         * The lines before and after this one in the subtree.
+         */
+        Line left, right;
+
+        /**
+         * Number of lines in the subtree.
+         */
+        int count;
+
+        /**
+         * Total length of the subtree's document lines, counting a
+         * terminator after each.
+         */
+        int sourceLength;
+
+        /**
+         * Total length of the subtree's translated lines, counting a
+         * terminator after each.
+         */
+        int translatedLength;
+
+        /**
+         * Constructor.
+         */
+        Line(String source, String translated, int priority) {
+            this.source = source;
+            this.translated = translated;
+            this.priority = priority;
+            this.update();
+        }
+
+        /**
+         * Recomputes the subtree totals from the children.
+         */
+        void update() {
+            this.count = 1;
+            this.sourceLength = this.source.length() + 1;
+            this.translatedLength = this.translated.length() + 1;
+            if (this.left != null) {
+                this.count += this.left.count;
+                this.sourceLength += this.left.sourceLength;
+                this.translatedLength += this.left.translatedLength;
+            }
+            if (this.right != null) {
+                this.count += this.right.count;
+                this.sourceLength += this.right.sourceLength;
+                this.translatedLength += this.right.translatedLength;
+            }
+        }
+
+    }
+
+    /**
+     * The word to definition map.
+     */
+    private final Map<String, String> dictionary;
+
+    /**
+     * The tokenizer profile of the document language.
+     */
+    private final TokenizerProfile profile;
+
+    /**
+     * Source of the treap priorities.
+     */
+    private final Random random = new Random();
+
+    /**
+     * The root of the treap of lines; never empty.
+     */
+    private Line root;
+
+    /**
+     * Returns the number of lines in {@code node}'s subtree.
+     */
+    private static int count(Line node) {
+        return node == null ? 0 : node.count;
+    }
+
+    /**
+     * Returns the source length of {@code node}'s subtree.
+     */
+    private static int sourceLength(Line node) {
+        return node == null ? 0 : node.sourceLength;
+    }
+
+    /**
+     * Returns the translated length of {@code node}'s subtree.
+     */
+    private static int translatedLength(Line node) {
+        return node == null ? 0 : node.translatedLength;
+    }
+
+    /**
+     * Returns the treap of the lines of {@code a} followed by those of
+     * {@code b}.
+     */
+    private static Line merge(Line a, Line b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            a.update();
+            return a;
+        }
+        b.left = merge(a, b.left);
+        b.update();
+        return b;
+    }
+
+    /**
+     * Splits {@code node} into its first {@code k} lines, left in
+     * {@code parts[0]}, and the rest, left in {@code parts[1]}.
+     */
+    private static void split(Line node, int k, Line[] parts) {
+        if (node == null) {
+            parts[0] = null;
+            parts[1] = null;
+        } else if (count(node.left) < k) {
+            split(node.right, k - count(node.left) - 1, parts);
+            node.right = parts[0];
+            node.update();
+            parts[0] = node;
+        } else {
+            split(node.left, k, parts);
+            node.left = parts[1];
+            node.update();
+            parts[1] = node;
+        }
+    }
+
+    /**
+     * Appends the lines of {@code node}'s subtree to {@code output}, in
+     * order.
+     */
+    private static void collect(Line node, List<Line> output) {
+        if (node != null) {
+            collect(node.left, output);
+            output.add(node);
+            collect(node.right, output);
+        }
+    }
+
+    /**
+     * Returns the source (or translated) offset of the start of line
+     * {@code line}, counting a terminator after every line before it.
+     */
+    private int start(int line, boolean translated) {
+        int sum = 0;
+        int remaining = line;
+        Line node = this.root;
+        while (node != null && remaining > 0) {
+            int before = count(node.left);
+            if (remaining <= before) {
+                node = node.left;
+            } else {
+                sum += translated ? translatedLength(node.left)
+                        + node.translated.length() + 1
+                        : sourceLength(node.left) + node.source.length() + 1;
+                remaining -= before + 1;
+                node = node.right;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the length of the document.
+     */
+    private int sourceLength() {
+        return this.root.sourceLength - 1;
+    }
+
+    /**
+     * Returns a new line of {@code source} and its translation.
+     */
+    private Line line(String source) {
+        return new Line(source, Main.translateLine(source, this.dictionary,
+                this.profile), this.random.nextInt());
+    }
+
+    /**
+     * Joins the source (or translated) lines of {@code lines} with
+     * {@code '\n'}.
+     */
+    private static String join(List<Line> lines, boolean translated) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines.size(); i++) {
+            if (i > 0) {
+                text.append('\n');
+            }
+            Line line = lines.get(i);
+            text.append(translated ? line.translated : line.source);
+        }
+        return text.toString();
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor; translates the whole document once.
+     *
+     * @param text
+     *            the document
+     * @param dictionary
+     *            the word to definition map
+     * @param profile
+     *            the tokenizer profile of the document language
+     */
+    public IncrementalTranslation(String text, Map<String, String> dictionary,
+            TokenizerProfile profile) {
+        this.dictionary = dictionary;
+        this.profile = profile;
+        for (String line : text.split("\n", -1)) {
+            this.root = merge(this.root, this.line(line));
+        }
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Applies {@code edit} to the document, re-translates only the lines it
+     * touches, and returns the edit that brings the previous translation up
+     * to date.
+     *
+     * @param edit
+     *            the edit, in document offsets
+     * @return the corresponding edit, in translation offsets
+     * @updates this
+     * @requires 0 <= edit.offset <= edit.offset + edit.length <= |document|
+     */
+    public Edit apply(Edit edit) {
+        int end = edit.offset() + edit.length();
+        if (edit.offset() < 0 || edit.length() < 0
+                || end > this.sourceLength()) {
+            throw new IndexOutOfBoundsException("edit " + edit);
+        }
+
+        int first = this.lineOf(edit.offset());
+        int last = this.lineOf(end);
+        Line[] parts = new Line[2];
+        split(this.root, first, parts);
+        Line before = parts[0];
+        split(parts[1], last - first + 1, parts);
+        Line touched = parts[0];
+        Line after = parts[1];
+        List<Line> old = new ArrayList<>(last - first + 1);
+        collect(touched, old);
+        int regionStart = sourceLength(before);
+        int outStart = translatedLength(before);
+        int outLength = translatedLength(touched) - 1;
+
+        String region = join(old, false);
+        int local = edit.offset() - regionStart;
+        String edited = region.substring(0, local) + edit.text()
+                + region.substring(local + edit.length());
+        String[] lines = edited.split("\n", -1);
+        List<Line> replaced = new ArrayList<>(lines.length);
+        Line middle = null;
+        for (int i = 0; i < lines.length; i++) {
+            // a line the edit left alone keeps its translation
+            Line line = i < old.size() && old.get(i).source.equals(lines[i])
+                    ? new Line(lines[i], old.get(i).translated,
+                            this.random.nextInt())
+                    : this.line(lines[i]);
+            replaced.add(line);
+            middle = merge(middle, line);
+        }
+        this.root = merge(merge(before, middle), after);
+
+        return new Edit(outStart, outLength, join(replaced, true));
+    }
+
+    /**
+     * Applies {@code edits} in order, each in the offsets of the document as
+     * left by the previous one.
+     *
+     * @param edits
+     *            the edits, in document offsets
+     * @return the corresponding edits, in translation offsets
+     * @updates this
+     */
+    public List<Edit> apply(List<Edit> edits) {
+        List<Edit> result = new ArrayList<>(edits.size());
+        for (Edit edit : edits) {
+            result.add(this.apply(edit));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the translation offset of the start of line {@code line}.
+     *
+     * @param line
+     *            the line number, from 0
+     * @return the offset of the line in the translation
+     * @requires 0 <= line <= lineCount
+     */
+    public int translatedLineStart(int line) {
+        int start = this.start(line, true);
+        return line < this.root.count ? start : start - 1;
+    }
+
+    /**
+     * Returns the line containing document offset {@code offset}.
+     *
+     * @param offset
+     *            the document offset
+     * @return the line number, from 0
+     */
+    public int lineOf(int offset) {
+        int line = 0;
+        int remaining = offset;
+        Line node = this.root;
+        while (node != null) {
+            int left = sourceLength(node.left);
+            int self = node.source.length() + 1;
+            if (remaining < left) {
+                node = node.left;
+            } else if (remaining < left + self) {
+                return line + count(node.left);
+            } else {
+                remaining -= left + self;
+                line += count(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return this.root.count - 1;
+    }
+
+    /**
+     * Returns the number of lines in the document.
+     *
+     * @return the number of lines
+     */
+    public int lineCount() {
+        return this.root.count;
+    }
+
+    /**
+     * Returns the whole document; linear in its size.
+     *
+     * @return the document
+     */
+    public String source() {
+        List<Line> lines = new ArrayList<>(this.root.count);
+        collect(this.root, lines);
+        return join(lines, false);
+    }
+
+    /**
+     * Returns the whole translation; linear in its size.
+     *
+     * @return the translation
+     */
+    public String translation() {
+        List<Line> lines = new ArrayList<>(this.root.count);
+        collect(this.root, lines);
+        return join(lines, true);
+    }
+
+}
@@ -1,5 +1,8 @@
 import java.util.*;
 import java.io.*;
+import java.nio.file.*;
+import java.nio.charset.*;
+import java.nio.file.attribute.*;
 
 
 
@@ -14,22 +17,25 @@ public final class Main {
      */
 
     /**
-     * Definition of whitespace separators.
+     * Definition of whitespace separators; compiled into
+     * {@code TokenizerProfile.JAVA}.
      */
-    private static final String SEPARATORS = " \t\n\r,.{}();:*&|-+=[]!";
-
+    static final String SEPARATORS = " \t\n\r,.{}();:*&|-+=[]!";
 
     /**
      * Returns the first "word" (maximal length string of characters not in
      * {@code SEPARATORS}) or "separator string" (maximal length string of
      * characters in {@code SEPARATORS}) in the given {@code text} starting at
-     * the given {@code position}.
+     * the given {@code position}, where {@code SEPARATORS} are the separators
+     * of {@code profile}.
      *
      * @param text
      *            the {@code String} from which to get the word or separator
      *            string
      * @param position
      *            the starting index
+     * @param profile
+     *            the tokenizer profile of the language of {@code text}
      * @return the first word or separator string found in {@code text} starting
      *         at index {@code position}
      * @requires 0 <= position < |text|
@@ -49,36 +55,207 @@ public final class Main {
      *      is not subset of entries(SEPARATORS))
      * </pre>
      */
-    private static String nextWordOrSeparator(String text, int position) {
+    private static String nextWordOrSeparator(String text, int position,
+            TokenizerProfile profile) {
         assert text != null : "Violation of: text is not null";
 
         assert 0 <= position : "Violation of: 0 <= position";
         assert position < text.length() : "Violation of: position < |text|";
 
-        String nextWordOrSeparator = "";
-        StringBuilder temp = new StringBuilder();
-        int pos = position;
-
-        if (!SEPARATORS.contains(Character.toString(text.charAt(pos)))) {
-            temp.append(text.charAt(pos));
-            pos++;
-            while (pos < text.length() && !SEPARATORS
-                    .contains(Character.toString(text.charAt(pos)))) {
-                temp.append(text.charAt(pos));
-                pos++;
+        return text.substring(position, profile.tokenEnd(text, position));
+
+    }
+
+    /**
+     * Returns the end of the code run starting at {@code position}: the end of
+     * the word or separator string there, cut short where a string literal,
+     * char literal or comment begins.
+     */
+    private static int codeEnd(String line, int position) {
+        int end = TokenizerProfile.JAVA.tokenEnd(line, position);
+        for (int j = position + 1; j < end; j++) {
+            char c = line.charAt(j);
+            if (c == '"' || c == '\'' || (c == '/' && j + 1 < line.length()
+                    && (line.charAt(j + 1) == '/'
+                            || line.charAt(j + 1) == '*'))) {
+                return j;
             }
-        } else {
-            temp.append(text.charAt(position));
-            pos++;
-            while (pos < text.length() && SEPARATORS
-                    .contains(Character.toString(text.charAt(pos)))) {
-                temp.append(text.charAt(pos));
-                pos++;
+        }
+        return end;
+    }
+
+    /**
+     * Reader splitting its input into lines like {@code BufferedReader}, but
+     * keeping each line's terminator as it appears in the input.
+     */
+    private static final class LineReader {
+
+        /**
+         * The input.
+         */
+        private final Reader in;
+
+        /**
+         * Characters read from {@code in} and not yet returned.
+         */
+        private final char[] buffer = new char[8192];
+
+        /**
+         * Start and end of the unreturned characters in {@code buffer}.
+         */
+        private int position, limit;
+
+        /**
+         * The terminator of the line returned last.
+         */
+        private String terminator = "";
+
+        /**
+         * Constructor.
+         */
+        LineReader(Reader in) {
+            this.in = in;
+        }
+
+        /**
+         * Refills {@code buffer}; returns whether anything was read.
+         */
+        private boolean fill() throws IOException {
+            this.position = 0;
+            this.limit = Math.max(this.in.read(this.buffer), 0);
+            return this.limit > 0;
+        }
+
+        /**
+         * Returns the next line without its terminator, or {@code null} at
+         * the end of the input. {@code terminator} is then {@code "\r\n"},
+         * {@code "\n"} or {@code "\r"}, or {@code ""} for a last line that
+         * has none.
+         */
+        String readLine() throws IOException {
+            StringBuilder line = null;
+            while (this.position < this.limit || this.fill()) {
+                int start = this.position;
+                int i = start;
+                while (i < this.limit && this.buffer[i] != '\n'
+                        && this.buffer[i] != '\r') {
+                    i++;
+                }
+                String text;
+                if (line == null) {
+                    text = new String(this.buffer, start, i - start);
+                } else {
+                    text = line.append(this.buffer, start, i - start)
+                            .toString();
+                }
+                if (i == this.limit) {
+                    line = new StringBuilder(text);
+                    this.position = this.limit;
+                    continue;
+                }
+                this.position = i + 1;
+                if (this.buffer[i] == '\n') {
+                    this.terminator = "\n";
+                } else if ((this.position < this.limit || this.fill())
+                        && this.buffer[this.position] == '\n') {
+                    this.position++;
+                    this.terminator = "\r\n";
+                } else {
+                    this.terminator = "\r";
+                }
+                return text;
+            }
+            this.terminator = "";
+            return line == null || line.length() == 0 ? null
+                    : line.toString();
+        }
+
+    }
+
+    /**
+     * Tokenizes one line of Java source into {@code output}, copying comments
+     * and string and char literals through as single {@code LITERAL} tokens
+     * instead of splitting them into words.
+     *
+     * @param line
+     *            the line, without its terminator
+     * @param inBlockComment
+     *            whether the line starts inside a block comment
+     * @param output
+     *            the stream to append the tokens to
+     * @param symbols
+     *            the symbol table to intern the tokens in
+     * @return whether the next line starts inside a block comment
+     * @updates output, symbols
+     */
+    private static boolean lexJavaLine(String line, boolean inBlockComment,
+            TokenStream output, SymbolTable symbols) {
+        int lineLen = line.length();
+        int i = 0;
+        boolean inComment = inBlockComment;
+
+        if (inComment) {
+            int close = line.indexOf("*/");
+            i = close < 0 ? lineLen : close + 2;
+            inComment = close < 0;
+            if (i > 0) {
+                output.add(symbols.intern(line, 0, i), TokenStream.LITERAL);
+            }
+        }
+
+        while (i < lineLen) {
+            char c = line.charAt(i);
+            char next = i + 1 < lineLen ? line.charAt(i + 1) : 0;
+            int end;
+            byte kind = TokenStream.LITERAL;
+            if (c == '/' && next == '/') {
+                end = lineLen;
+            } else if (c == '/' && next == '*') {
+                int close = line.indexOf("*/", i + 2);
+                end = close < 0 ? lineLen : close + 2;
+                inComment = close < 0;
+            } else if (c == '"' || c == '\'') {
+                end = i + 1;
+                while (end < lineLen && line.charAt(end) != c) {
+                    if (line.charAt(end) == '\\') {
+                        end++;
+                    }
+                    end++;
+                }
+                end = Math.min(end + 1, lineLen);
+            } else {
+                end = codeEnd(line, i);
+                kind = TokenizerProfile.JAVA.isSeparator(c)
+                        ? TokenStream.SEPARATOR : TokenStream.WORD;
             }
+            output.add(symbols.intern(line, i, end), kind);
+            i = end;
         }
-        nextWordOrSeparator = temp.toString();
-        return nextWordOrSeparator;
 
+        return inComment;
+    }
+
+    /**
+     * Escapes backslash, tab, carriage return and newline in {@code text} for
+     * one-line edit records.
+     */
+    private static String escapeEdit(String text) {
+        return text.replace("\\", "\\\\").replace("\t", "\\t")
+                .replace("\r", "\\r").replace("\n", "\\n");
+    }
+
+    /**
+     * Opens {@code outFileName} for writing; a name ending in ".gz" is
+     * written as gzip, compressed on all cores as it is written.
+     */
+    private static PrintWriter openWriter(String outFileName)
+            throws IOException {
+        if (outFileName.endsWith(".gz")) {
+            return new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                    new ParallelGzipOutputStream(
+                            new FileOutputStream(outFileName)))));
+        }
+        return new PrintWriter(new BufferedWriter(new FileWriter(outFileName)));
     }
 
     /*
@@ -91,6 +268,11 @@ public final class Main {
      */
     public static final String END_OF_INPUT = "### END OF INPUT ###";
 
+    /**
+     * The English to Polish dictionary file.
+     */
+    public static final String DEFAULT_DICTIONARY = "data/PolishDictionary2.txt";
+
     /**
      * Tokenizes the entire input getting rid of all whitespace separators and
      * returning the non-separator tokens in a {@code Queue<String>}.
@@ -107,6 +289,27 @@ public final class Main {
      */
 
     public static Deque<String> tokens(BufferedReader in) {
+        return tokens(in, TokenizerProfile.JAVA);
+    }
+
+    /**
+     * Tokenizes the entire input like {@code tokens}, splitting words and
+     * separator strings by the rules of {@code profile}.
+     *
+     * @param in
+     *            the input stream
+     * @param profile
+     *            the tokenizer profile of the language of the input
+     * @return the queue of tokens
+     * @requires in.is_open
+     * @ensures <pre>
+     * tokens =
+     *   [the tokens in #in.content] * <END_OF_INPUT>  and
+     * in.content = <>
+     * </pre>
+     */
+    public static Deque<String> tokens(BufferedReader in,
+            TokenizerProfile profile) {
 
         Deque<String> output = new ArrayDeque<>();
 
@@ -123,7 +326,7 @@ public final class Main {
             int i = 0;
             int lineLen = line.length();
             while (i < lineLen) {
-                String token = nextWordOrSeparator(line, i);
+                String token = nextWordOrSeparator(line, i, profile);
                 output.addLast(token);
                 i += token.length();
             }
@@ -139,92 +342,173 @@ public final class Main {
         output.addLast(END_OF_INPUT);
         return output;
     }
-/*
-    public static Map<String, String> buildEtoPDictionary() {
-        BufferedReader dictionaryFile = null;
-        try {
-            dictionaryFile = new BufferedReader(new FileReader("data/PolishDictionary.txt"));
-        } catch(IOException e) {
-            System.err.println("Error opening file");
-        }
 
-        Map<String, String> dictionary = new HashMap<>();
+    /**
+     * Tokenizes the entire input like {@code tokens}, but interns every token
+     * in {@code symbols} and returns the stream as symbol ids and kind codes.
+     * Each distinct token is stored once no matter how often it occurs. Line
+     * terminators are kept as they appear in the input, one {@code NEWLINE}
+     * token each, so the symbols concatenate back to the input exactly. No
+     * {@code END_OF_INPUT} token is appended.
+     *
+     * @param in
+     *            the input stream
+     * @param symbols
+     *            the symbol table to intern the tokens in
+     * @return the stream of tokens
+     * @updates symbols
+     * @requires in.is_open
+     * @ensures <pre>
+     * [the symbols of tokenStream] =
+     *   [the tokens of #in.content, including whitespace]  and
+     * in.content = <>
+     * </pre>
+     */
+    public static TokenStream tokenStream(BufferedReader in,
+            SymbolTable symbols) {
+        return tokenStream(in, symbols, TokenizerProfile.JAVA);
+    }
 
-        String line1 = "";
-        String line2 = "";
+    /**
+     * Tokenizes the entire input like {@code tokenStream}, splitting words and
+     * separator strings by the rules of {@code profile}.
+     *
+     * @param in
+     *            the input stream
+     * @param symbols
+     *            the symbol table to intern the tokens in
+     * @param profile
+     *            the tokenizer profile of the language of the input
+     * @return the stream of tokens
+     * @updates symbols
+     * @requires in.is_open
+     */
+    public static TokenStream tokenStream(BufferedReader in,
+            SymbolTable symbols, TokenizerProfile profile) {
+
+        TokenStream output = new TokenStream();
+        LineReader lines = new LineReader(in);
+
+        String line = null;
 
         try {
-            line1 = dictionaryFile.readLine();
-            line2 = dictionaryFile.readLine();
+            line = lines.readLine();
         } catch(IOException e) {
             System.err.println("Error with the thing");
         }
 
-        while (line1 != null) {
+        while (line != null) {
 
-            dictionary.put(line1, line2);
+            int i = 0;
+            int lineLen = line.length();
+            while (i < lineLen) {
+                int end = profile.tokenEnd(line, i);
+                byte kind = profile.isSeparator(line.charAt(i))
+                        ? TokenStream.SEPARATOR : TokenStream.WORD;
+                output.add(symbols.intern(line, i, end), kind);
+                i = end;
+            }
+            if (lines.terminator.length() > 0) {
+                output.add(symbols.intern(lines.terminator),
+                        TokenStream.NEWLINE);
+            }
 
             try {
-                line1 = dictionaryFile.readLine();
-                line2 = dictionaryFile.readLine();
+                line = lines.readLine();
             } catch(IOException e) {
                 System.err.println("Error with the thing");
+                line = null;
             }
 
         }
-
-        return dictionary;
-
+        return output;
     }
-    */
 
-    public static Map<String, String> buildEtoPDictionary() {
-        BufferedReader dictionaryFile = null;
-        try {
-            dictionaryFile = new BufferedReader(new FileReader("data/PolishDictionary2.txt"));
-        } catch(IOException e) {
-            System.err.println("Error opening file");
-        }
+    /**
+     * Tokenizes the entire input like {@code tokenStream}, but recognizes Java
+     * comments and string and char literals with a small state machine and
+     * keeps each one (per line, for block comments) as a single
+     * {@code LITERAL} token. {@code TokenStream.translate} copies those
+     * through without a lookup, so words inside Javadoc or strings are never
+     * translated.
+     *
+     * @param in
+     *            the input stream
+     * @param symbols
+     *            the symbol table to intern the tokens in
+     * @return the stream of tokens
+     * @updates symbols
+     * @requires in.is_open
+     * @ensures <pre>
+     * [the symbols of javaTokenStream] =
+     *   [the tokens of #in.content, including whitespace]  and
+     * in.content = <>
+     * </pre>
+     */
+    public static TokenStream javaTokenStream(BufferedReader in,
+            SymbolTable symbols) {
 
-        Map<String, String> dictionary = new HashMap<>();
+        TokenStream output = new TokenStream();
+        LineReader lines = new LineReader(in);
+        boolean inBlockComment = false;
 
-        String line = "";
-        String word = "";
-        String definition = "";
-        int splitLocation = 0;
+        String line = null;
 
         try {
-            line = dictionaryFile.readLine();
-
+            line = lines.readLine();
         } catch(IOException e) {
             System.err.println("Error with the thing");
         }
 
-
         while (line != null) {
 
-            if (line.contains(",")) {
-                splitLocation = line.indexOf(',');
+            inBlockComment = lexJavaLine(line, inBlockComment, output,
+                    symbols);
+            if (lines.terminator.length() > 0) {
+                output.add(symbols.intern(lines.terminator),
+                        TokenStream.NEWLINE);
             }
-            word = line.substring(0,splitLocation);
-            definition = line.substring(splitLocation + 2);
-
-            dictionary.put(word, definition);
 
             try {
-                line = dictionaryFile.readLine();
-
+                line = lines.readLine();
             } catch(IOException e) {
                 System.err.println("Error with the thing");
+                line = null;
             }
 
         }
+        return output;
+    }
 
-        return dictionary;
+    /**
+     * Tokenizes the entire input like {@code tokens}, but keeps Java comments
+     * and string and char literals whole, as {@code javaTokenStream} does.
+     * {@code translate} then probes the dictionary once per comment or
+     * literal instead of once per word inside it, and cannot match it.
+     *
+     * @param in
+     *            the input stream
+     * @return the queue of tokens
+     * @requires in.is_open
+     * @ensures <pre>
+     * tokens =
+     *   [the tokens in #in.content] * <END_OF_INPUT>  and
+     * in.content = <>
+     * </pre>
+     */
+    public static Deque<String> javaTokens(BufferedReader in) {
+        SymbolTable symbols = new SymbolTable();
+        TokenStream stream = javaTokenStream(in, symbols);
 
+        Deque<String> output = new ArrayDeque<>();
+        for (int i = 0; i < stream.length(); i++) {
+            output.addLast(symbols.symbol(stream.id(i)));
+        }
+        output.addLast(END_OF_INPUT);
+        return output;
     }
 /*
-    public static Map<String, String> buildPtoEDictionary() {
+    public static Map<String, String> buildEtoPDictionary() {
         BufferedReader dictionaryFile = null;
         try {
             dictionaryFile = new BufferedReader(new FileReader("data/PolishDictionary.txt"));
@@ -246,7 +530,7 @@ public final class Main {
 
         while (line1 != null) {
 
-            dictionary.put(line2, line1);
+            dictionary.put(line1, line2);
 
             try {
                 line1 = dictionaryFile.readLine();
@@ -262,42 +546,66 @@ public final class Main {
     }
     */
 
+    /**
+     * Reads a dictionary file of {@code word, definition} lines into a map.
+     * Malformed lines are reported on {@code System.err} and skipped.
+     *
+     * @param fileName
+     *            the name of the dictionary file
+     * @param reversed
+     *            whether to map definitions to words instead of words to
+     *            definitions
+     * @return the dictionary
+     */
+    public static Map<String, String> buildDictionary(String fileName,
+            boolean reversed) {
+        DictionaryLoader.Result result = null;
+        try {
+            result = DictionaryLoader.load(fileName, reversed);
+        } catch(IOException e) {
+            System.err.println("Error opening file");
+            return new HashMap<>();
+        }
+
+        for (String line : result.rejected()) {
+            System.err.println("Rejected " + fileName + " line " + line);
+        }
+
+        return result.dictionary();
+
+    }
+
+    public static Map<String, String> buildEtoPDictionary() {
+        return buildDictionary(DEFAULT_DICTIONARY, false);
+    }
+/*
     public static Map<String, String> buildPtoEDictionary() {
         BufferedReader dictionaryFile = null;
         try {
-            dictionaryFile = new BufferedReader(new FileReader("data/PolishDictionary2.txt"));
+            dictionaryFile = new BufferedReader(new FileReader("data/PolishDictionary.txt"));
         } catch(IOException e) {
             System.err.println("Error opening file");
         }
 
         Map<String, String> dictionary = new HashMap<>();
 
-        String line = "";
-        String word = "";
-        String definition = "";
-        int splitLocation = 0;
+        String line1 = "";
+        String line2 = "";
 
         try {
-            line = dictionaryFile.readLine();
-
+            line1 = dictionaryFile.readLine();
+            line2 = dictionaryFile.readLine();
         } catch(IOException e) {
             System.err.println("Error with the thing");
         }
 
+        while (line1 != null) {
 
-        while (line != null) {
-
-            if (line.contains(",")) {
-                splitLocation = line.indexOf(',');
-            }
-            definition = line.substring(0,splitLocation);
-            word = line.substring(splitLocation + 2);
-
-            dictionary.put(word, definition);
+            dictionary.put(line2, line1);
 
             try {
-                line = dictionaryFile.readLine();
-
+                line1 = dictionaryFile.readLine();
+                line2 = dictionaryFile.readLine();
             } catch(IOException e) {
                 System.err.println("Error with the thing");
             }
@@ -307,18 +615,79 @@ public final class Main {
         return dictionary;
 
     }
+    */
+
+    public static Map<String, String> buildPtoEDictionary() {
+        return buildDictionary(DEFAULT_DICTIONARY, true);
+    }
 
     public static Deque<String> translate(Deque<String> tokens) {
+        return translate(tokens, buildEtoPDictionary());
+    }
 
-        Deque<String> output = new ArrayDeque<>();
+    /**
+     * Replaces every token that is a word of {@code dictionary} by its
+     * definition. The dictionary is read once per token; pass a
+     * {@code VersionedDictionary} snapshot to translate against one
+     * consistent version while the dictionary is being updated.
+     *
+     * @param tokens
+     *            the tokens to translate
+     * @param dictionary
+     *            the word to definition map
+     * @return the translated tokens
+     * @updates tokens
+     * @ensures tokens = <>
+     */
+    public static Deque<String> translate(Deque<String> tokens,
+            Map<String, String> dictionary) {
+        return translate(tokens, dictionary, null);
+    }
 
-        Map<String, String> dictionary = buildEtoPDictionary();
+    /**
+     * Translates like {@code translate}, but a word that is not in
+     * {@code dictionary} is replaced by the definition of the closest word
+     * in {@code fuzzy}, if there is one, so misspelled keywords are still
+     * translated. Words found exactly never reach {@code fuzzy}, and
+     * neither do words that occur more than once in {@code tokens}: a
+     * spelling used repeatedly is an identifier, not a typo.
+     *
+     * @param tokens
+     *            the tokens to translate
+     * @param dictionary
+     *            the word to definition map
+     * @param fuzzy
+     *            the fuzzy index of {@code dictionary}, or null for exact
+     *            lookups only
+     * @return the translated tokens
+     * @updates tokens
+     * @ensures tokens = <>
+     */
+    public static Deque<String> translate(Deque<String> tokens,
+            Map<String, String> dictionary, FuzzyIndex fuzzy) {
 
+        Deque<String> output = new ArrayDeque<>();
+
+        Map<String, Integer> misses = new HashMap<>();
+        if (fuzzy != null) {
+            for (String word : tokens) {
+                if (!dictionary.containsKey(word)) {
+                    Integer count = misses.get(word);
+                    misses.put(word, count == null ? 1 : count + 1);
+                }
+            }
+        }
 
         while (tokens.size() > 0) {
             String word = tokens.removeFirst();
             String val = dictionary.get(word);
-            if (dictionary.containsKey(word)) {
+            if (val == null && fuzzy != null && misses.get(word) == 1) {
+                String closest = fuzzy.closest(word);
+                if (closest != null) {
+                    val = dictionary.get(closest);
+                }
+            }
+            if (val != null) {
                 output.addLast(val);
             } else {
                 output.addLast(word);
@@ -328,14 +697,81 @@ public final class Main {
         return output;
     }
 
-    public static void detokenize(Deque<String> tokens, String outFileName) {
+    /**
+     * Translates a single line, without its terminator, by the rules of
+     * {@code profile}. Separator strings are copied without a lookup.
+     *
+     * @param line
+     *            the line to translate
+     * @param dictionary
+     *            the word to definition map
+     * @param profile
+     *            the tokenizer profile of the language of {@code line}
+     * @return the translated line
+     */
+    public static String translateLine(String line,
+            Map<String, String> dictionary, TokenizerProfile profile) {
+
+        StringBuilder output = new StringBuilder(line.length());
+        translateInto(line, dictionary, profile, output);
+        return output.toString();
+    }
+
+    /**
+     * Translates {@code text} like {@code translateLine}, appending the
+     * translation to {@code output} so a caller can reuse one buffer.
+     * Line terminators are separators and are copied as they are.
+     *
+     * @param text
+     *            the text to translate
+     * @param dictionary
+     *            the word to definition map
+     * @param profile
+     *            the tokenizer profile of the language of {@code text}
+     * @param output
+     *            the buffer to append the translation to
+     * @updates output
+     */
+    public static void translateInto(String text,
+            Map<String, String> dictionary, TokenizerProfile profile,
+            StringBuilder output) {
+
+        int i = 0;
+        int textLen = text.length();
+        while (i < textLen) {
+            int end = profile.tokenEnd(text, i);
+            if (profile.isSeparator(text.charAt(i))) {
+                output.append(text, i, end);
+            } else {
+                String word = text.substring(i, end);
+                String val = dictionary.get(word);
+                output.append(val != null ? val : word);
+            }
+            i = end;
+        }
+    }
+
+    /**
+     * Writes every token of {@code tokens} but the last
+     * ({@code END_OF_INPUT}) to {@code outFileName}.
+     *
+     * @param tokens
+     *            the tokens to write
+     * @param outFileName
+     *            the file to write to
+     * @return whether the file was written completely
+     * @updates tokens
+     */
+    public static boolean detokenize(Deque<String> tokens,
+            String outFileName) {
 
         PrintWriter output  = null;
         try {
-            output = new PrintWriter(new BufferedWriter(new FileWriter(outFileName)));
+            output = openWriter(outFileName);
 
         } catch(IOException e) {
             System.err.println("Error creating file writer");
+            return false;
         }
 
         while (tokens.size() > 1) {
@@ -350,7 +786,456 @@ public final class Main {
 
         output.close();
 
+        return !output.checkError();
+    }
+
+    /**
+     * Writes the symbols of {@code tokens} to {@code outFileName}.
+     *
+     * @param tokens
+     *            the tokens to write
+     * @param symbols
+     *            the symbol table {@code tokens} was interned in
+     * @param outFileName
+     *            the file to write to
+     * @return whether the file was written completely
+     */
+    public static boolean detokenize(TokenStream tokens, SymbolTable symbols,
+            String outFileName) {
+
+        PrintWriter output  = null;
+        try {
+            output = openWriter(outFileName);
+
+        } catch(IOException e) {
+            System.err.println("Error creating file writer");
+            return false;
+        }
+
+        for (int i = 0; i < tokens.length(); i++) {
+            output.print(symbols.symbol(tokens.id(i)));
+        }
+
+        output.close();
+
+        return !output.checkError();
+    }
+
+    /**
+     * Writes {@code translated} like {@code detokenize} and, in the same pass,
+     * records a {@code SourceMap} entry for every token that differs from the
+     * token at the same index of {@code tokens}. Offsets count characters of
+     * the source as read, line terminators included.
+     *
+     * @param tokens
+     *            the source tokens
+     * @param translated
+     *            the translation of {@code tokens}, index for index
+     * @param symbols
+     *            the symbol table both streams are interned in
+     * @param outFileName
+     *            the file to write the translation to
+     * @return the source map between the source and the written output, or
+     *         null if the output file cannot be opened or written completely
+     * @requires |tokens| = |translated|
+     */
+    public static SourceMap detokenizeWithSourceMap(TokenStream tokens,
+            TokenStream translated, SymbolTable symbols, String outFileName) {
+        assert tokens.length() == translated.length()
+                : "Violation of: |tokens| = |translated|";
+
+        PrintWriter output  = null;
+        try {
+            output = openWriter(outFileName);
+
+        } catch(IOException e) {
+            System.err.println("Error creating file writer");
+            return null;
+        }
+
+        SourceMap.Builder map = new SourceMap.Builder();
+        int inOffset = 0;
+        for (int i = 0; i < translated.length(); i++) {
+            int inLength = symbols.symbol(tokens.id(i)).length();
+            String token = symbols.symbol(translated.id(i));
+            if (translated.id(i) != tokens.id(i)) {
+                map.add(inOffset, inLength, token.length());
+            }
+            inOffset += inLength;
+            output.print(token);
+        }
+
+        output.close();
+
+        if (output.checkError()) {
+            System.err.println("Error writing " + outFileName);
+            return null;
+        }
+        return map.build();
+    }
+
+    /**
+     * Writes only the changes between {@code tokens} and {@code translated}
+     * as edit records, one per line: {@code offset<TAB>length<TAB>replacement}
+     * with backslash, tab, carriage return and newline escaped in the
+     * replacement. Changed tokens that are adjacent are merged into one
+     * record. Offsets count characters of the source as read, line
+     * terminators included; applying the records from last to first turns
+     * the source into the translation.
+     *
+     * @param tokens
+     *            the source tokens
+     * @param translated
+     *            the translation of {@code tokens}, index for index
+     * @param symbols
+     *            the symbol table both streams are interned in
+     * @param outFileName
+     *            the file to write the edit records to
+     * @return the number of records written, or -1 if the output file
+     *         cannot be opened or written completely
+     * @requires |tokens| = |translated|
+     */
+    public static int detokenizeEdits(TokenStream tokens,
+            TokenStream translated, SymbolTable symbols, String outFileName) {
+        assert tokens.length() == translated.length()
+                : "Violation of: |tokens| = |translated|";
+
+        PrintWriter output  = null;
+        try {
+            output = openWriter(outFileName);
+
+        } catch(IOException e) {
+            System.err.println("Error creating file writer");
+            return -1;
+        }
+
+        int records = 0;
+        int offset = 0;
+        int editStart = -1;
+        int editLength = 0;
+        StringBuilder replacement = new StringBuilder();
+        for (int i = 0; i <= tokens.length(); i++) {
+            boolean changed = i < tokens.length()
+                    && tokens.id(i) != translated.id(i);
+            if (!changed && editStart >= 0) {
+                output.print(editStart + "\t" + editLength + "\t");
+                output.print(escapeEdit(replacement.toString()));
+                output.print('\n');
+                records++;
+                editStart = -1;
+            }
+            if (i == tokens.length()) {
+                break;
+            }
+            int length = symbols.symbol(tokens.id(i)).length();
+            if (changed) {
+                if (editStart < 0) {
+                    editStart = offset;
+                    editLength = 0;
+                    replacement.setLength(0);
+                }
+                editLength += length;
+                replacement.append(symbols.symbol(translated.id(i)));
+            }
+            offset += length;
+        }
+
+        output.close();
+
+        if (output.checkError()) {
+            System.err.println("Error writing " + outFileName);
+            return -1;
+        }
+        return records;
+    }
+
+    /**
+     * Writes the changes between {@code tokens} and {@code translated} as a
+     * unified diff without context lines, one hunk per run of changed lines.
+     * Translation never adds or removes lines, so both sides of a hunk have
+     * the same line numbers. Each line keeps its own terminator, so the diff
+     * applies to CRLF sources too.
+     *
+     * @param tokens
+     *            the source tokens
+     * @param translated
+     *            the translation of {@code tokens}, index for index
+     * @param symbols
+     *            the symbol table both streams are interned in
+     * @param fileName
+     *            the name of the file to use in the diff headers
+     * @param outFileName
+     *            the file to write the diff to
+     * @return the number of hunks written, or -1 if the output file cannot
+     *         be opened or written completely
+     * @requires |tokens| = |translated|
+     */
+    public static int detokenizeDiff(TokenStream tokens,
+            TokenStream translated, SymbolTable symbols, String fileName,
+            String outFileName) {
+        assert tokens.length() == translated.length()
+                : "Violation of: |tokens| = |translated|";
+
+        PrintWriter output  = null;
+        try {
+            output = openWriter(outFileName);
+
+        } catch(IOException e) {
+            System.err.println("Error creating file writer");
+            return -1;
+        }
+
+        int hunks = 0;
+        int lineNumber = 1;
+        int hunkStart = 0;
+        boolean lineChanged = false;
+        StringBuilder before = new StringBuilder();
+        StringBuilder after = new StringBuilder();
+        StringBuilder removed = new StringBuilder();
+        StringBuilder added = new StringBuilder();
+        for (int i = 0; i <= tokens.length(); i++) {
+            boolean endOfLine = i == tokens.length()
+                    || tokens.kind(i) == TokenStream.NEWLINE;
+            if (!endOfLine) {
+                before.append(symbols.symbol(tokens.id(i)));
+                after.append(symbols.symbol(translated.id(i)));
+                lineChanged |= tokens.id(i) != translated.id(i);
+                continue;
+            }
+            if (lineChanged) {
+                if (hunkStart == 0) {
+                    hunkStart = lineNumber;
+                }
+                String terminator = i < tokens.length()
+                        ? symbols.symbol(tokens.id(i))
+                        : "\n\\ No newline at end of file\n";
+                removed.append('-').append(before).append(terminator);
+                added.append('+').append(after).append(terminator);
+            }
+            if ((!lineChanged || i == tokens.length()) && hunkStart > 0) {
+                if (hunks == 0) {
+                    output.print("--- a/" + fileName + "\n");
+                    output.print("+++ b/" + fileName + "\n");
+                }
+                int count = lineNumber - hunkStart + (lineChanged ? 1 : 0);
+                output.print("@@ -" + hunkStart + "," + count + " +"
+                        + hunkStart + "," + count + " @@\n");
+                output.print(removed);
+                output.print(added);
+                hunks++;
+                hunkStart = 0;
+                removed.setLength(0);
+                added.setLength(0);
+            }
+            before.setLength(0);
+            after.setLength(0);
+            lineChanged = false;
+            lineNumber++;
+        }
+
+        output.close();
+
+        if (output.checkError()) {
+            System.err.println("Error writing " + outFileName);
+            return -1;
+        }
+        return hunks;
+    }
+
+    /**
+     * Translates {@code tokens} with each of {@code dictionaries} and writes
+     * the results to the matching entry of {@code outFileNames}, all in a
+     * single pass over the stream. Separators and newlines are resolved once
+     * and written to every output; only words are looked up, one table load
+     * per dictionary.
+     *
+     * @param tokens
+     *            the tokenized input
+     * @param symbols
+     *            the symbol table {@code tokens} was interned in
+     * @param dictionaries
+     *            the word to definition maps, one per target language
+     * @param outFileNames
+     *            the output file names, one per dictionary
+     * @return whether every file was written completely; if any of them
+     *         cannot be opened, none is written
+     * @updates symbols
+     * @requires |dictionaries| = |outFileNames|
+     */
+    public static boolean detokenizeAll(TokenStream tokens, SymbolTable symbols,
+            List<Map<String, String>> dictionaries,
+            List<String> outFileNames) {
+        assert dictionaries.size() == outFileNames.size()
+                : "Violation of: |dictionaries| = |outFileNames|";
+
+        int n = dictionaries.size();
+        int[][] tables = new int[n][];
+        for (int k = 0; k < n; k++) {
+            tables[k] = symbols.compile(dictionaries.get(k));
+        }
+
+        PrintWriter[] outputs = new PrintWriter[n];
+        for (int k = 0; k < n; k++) {
+            try {
+                outputs[k] = openWriter(outFileNames.get(k));
+            } catch(IOException e) {
+                System.err.println("Error creating file writer");
+                for (int j = 0; j < k; j++) {
+                    outputs[j].close();
+                }
+                return false;
+            }
+        }
+
+        for (int i = 0; i < tokens.length(); i++) {
+            int id = tokens.id(i);
+            if (tokens.kind(i) != TokenStream.WORD) {
+                String span = symbols.symbol(id);
+                for (int k = 0; k < n; k++) {
+                    outputs[k].print(span);
+                }
+            } else {
+                for (int k = 0; k < n; k++) {
+                    int[] table = tables[k];
+                    outputs[k].print(symbols.symbol(
+                            id < table.length ? table[id] : id));
+                }
+            }
+        }
+
+        boolean written = true;
+        for (int k = 0; k < n; k++) {
+            outputs[k].close();
+            written &= !outputs[k].checkError();
+        }
+
+        return written;
+    }
+
+    /**
+     * Translates the file {@code inFileName} with {@code dictionary} into
+     * {@code outFileName}, tokenizing by the profile registered for its
+     * extension ({@code TokenizerProfile.JAVA} if there is none).
+     *
+     * @param inFileName
+     *            the source file
+     * @param outFileName
+     *            the file to write the translation to
+     * @param dictionary
+     *            the word to definition map
+     * @return whether the translation was written completely; false if
+     *         either file could not be opened or writing failed
+     */
+    public static boolean translateFile(String inFileName,
+            String outFileName, Map<String, String> dictionary) {
+
+        TokenizerProfile profile = TokenizerProfile.forFileName(inFileName);
+        if (profile == null) {
+            profile = TokenizerProfile.JAVA;
+        }
+
+        BufferedReader inFile = null;
+        try {
+            inFile = new BufferedReader(new FileReader(inFileName));
+        } catch(IOException e) {
+            System.err.println("Error opening file " + inFileName);
+            return false;
+        }
+
+        boolean written = detokenize(translate(tokens(inFile, profile),
+                dictionary), outFileName);
+
+        try {
+            inFile.close();
+        } catch(IOException e) {
+            System.err.println("Error closing Buffered Reader");
+        }
+
+        return written;
+    }
+
+    /**
+     * Translates every source file under {@code inDirectory} into the same
+     * relative path under {@code outDirectory}, each with the tokenizer
+     * profile of its own extension, so a mixed-language tree is handled in
+     * one run. Files with an extension no profile is registered for are
+     * copied unchanged.
+     *
+     * @param inDirectory
+     *            the root of the source tree
+     * @param outDirectory
+     *            the root of the translated tree
+     * @param dictionary
+     *            the word to definition map
+     * @return the number of files translated
+     */
+    public static int translateTree(String inDirectory, String outDirectory,
+            final Map<String, String> dictionary) {
+
+        final Path inRoot = Paths.get(inDirectory);
+        final Path outRoot = Paths.get(outDirectory);
+        final int[] translated = new int[1];
+
+        try {
+            Files.walkFileTree(inRoot, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file,
+                        BasicFileAttributes attributes) throws IOException {
+                    Path out = outRoot.resolve(inRoot.relativize(file)
+                            .toString());
+                    Files.createDirectories(out.toAbsolutePath().getParent());
+                    if (TokenizerProfile.forFileName(
+                            file.getFileName().toString()) != null) {
+                        if (translateFile(file.toString(), out.toString(),
+                                dictionary)) {
+                            translated[0]++;
+                        }
+                    } else {
+                        Files.copy(file, out,
+                                StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch(IOException e) {
+            System.err.println("Error translating " + inDirectory + ": "
+                    + e.getMessage());
+        }
+
+        return translated[0];
+    }
+
+    /**
+     * Translates the source files in the zip or jar archive
+     * {@code inFileName} into the archive {@code outFileName}, like
+     * {@code translateTree} but without unpacking either archive. Entries are
+     * translated on all cores; other entries are copied unchanged.
+     *
+     * @param inFileName
+     *            the source archive
+     * @param outFileName
+     *            the translated archive
+     * @param dictionary
+     *            the word to definition map
+     * @return the number of entries translated
+     */
+    public static int translateArchive(String inFileName, String outFileName,
+            Map<String, String> dictionary) {
+
+        int translated = 0;
+        try (InputStream in = new BufferedInputStream(
+                new FileInputStream(inFileName));
+                OutputStream out = new BufferedOutputStream(
+                        new FileOutputStream(outFileName))) {
+            translated = ArchiveTranslator.translate(in, out, dictionary,
+                    Charset.defaultCharset(),
+                    Runtime.getRuntime().availableProcessors());
+        } catch(IOException e) {
+            System.err.println("Error translating " + inFileName + ": "
+                    + e.getMessage());
+        }
 
+        return translated;
     }
 
     /*
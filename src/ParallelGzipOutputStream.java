@@ -0,0 +1,304 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+import java.io.*;
+
+/**
+ * {@code ParallelGzipOutputStream} writing a single standard gzip stream
+ * whose deflate blocks are compressed on several threads, in the manner of
+ * pigz. Input is cut into fixed-size blocks; each block is compressed
+ * independently, primed with the last 32 KiB of the block before it so the
+ * ratio stays close to single-threaded gzip, and ended with a sync flush so
+ * the compressed blocks can simply be concatenated. The CRC-32 is computed
+ * as the data is written.
+ */
+public final class ParallelGzipOutputStream extends OutputStream {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Uncompressed bytes per block.
+     */
+    private static final int BLOCK_SIZE = 128 * 1024;
+
+    /**
+     * Size of the deflate window, and so of the dictionary passed on to the
+     * next block.
+     */
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    /**
+     * The gzip member header: magic, deflate, no flags, no time, unknown OS.
+     */
+    private static final byte[] HEADER = { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0,
+            0, 0, (byte) 0xff };
+
+    /**
+     * The stream the gzip data is written to.
+     */
+    private final OutputStream out;
+
+    /**
+     * The compression threads.
+     */
+    private final ExecutorService pool;
+
+    /**
+     * The compression level.
+     */
+    private final int level;
+
+    /**
+     * Maximum number of blocks in flight before the writer waits.
+     */
+    private final int maxPending;
+
+    /**
+     * Compressed blocks in stream order, possibly still being compressed.
+     */
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    /**
+     * CRC-32 of all data written so far.
+     */
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * The block being filled.
+     */
+    private byte[] block = new byte[BLOCK_SIZE];
+
+    /**
+     * Number of bytes in {@code block}.
+     */
+    private int blockLength;
+
+    /**
+     * The tail of the previous block, used as the dictionary of the next, or
+     * null for the first block.
+     */
+    private byte[] dictionary;
+
+    /**
+     * Total uncompressed length, modulo 2^32 as gzip stores it.
+     */
+    private long totalLength;
+
+    /**
+     * Whether {@code close} has been called.
+     */
+    private boolean closed;
+
+    /**
+     * Compresses {@code data[0, length)} with {@code dictionary}, ending with
+     * a sync flush, or with the final block if {@code last}.
+     */
+    private static byte[] deflate(byte[] data, int length, byte[] dictionary,
+            int level, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(data, 0, length);
+            if (last) {
+                deflater.finish();
+            }
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(
+                    length / 2 + 64);
+            byte[] buffer = new byte[16 * 1024];
+            int mode = last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH;
+            while (true) {
+                int n = deflater.deflate(buffer, 0, buffer.length, mode);
+                compressed.write(buffer, 0, n);
+                if (last ? deflater.finished()
+                        : n < buffer.length && deflater.needsInput()) {
+                    break;
+                }
+            }
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Writes finished blocks at the head of the queue; waits for them while
+     * more than {@code maxInFlight} are pending.
+     */
+    private void writeCompleted(int maxInFlight) throws IOException {
+        while (!this.pending.isEmpty()
+                && (this.pending.size() > maxInFlight
+                        || this.pending.peekFirst().isDone())) {
+            try {
+                this.out.write(this.pending.removeFirst().get());
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted compressing");
+            } catch(ExecutionException e) {
+                throw new IOException("Error compressing", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Hands the current block to the pool and starts a new one.
+     */
+    private void submitBlock(final boolean last) throws IOException {
+        final byte[] data = this.block;
+        final int length = this.blockLength;
+        final byte[] dict = this.dictionary;
+        final int lvl = this.level;
+        this.pending.addLast(this.pool.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                return deflate(data, length, dict, lvl, last);
+            }
+        }));
+
+        if (length >= DICTIONARY_SIZE) {
+            this.dictionary = Arrays.copyOfRange(data,
+                    length - DICTIONARY_SIZE, length);
+        } else if (length > 0) {
+            byte[] previous = this.dictionary == null ? new byte[0]
+                    : this.dictionary;
+            int keep = Math.min(previous.length, DICTIONARY_SIZE - length);
+            byte[] joined = new byte[keep + length];
+            System.arraycopy(previous, previous.length - keep, joined, 0,
+                    keep);
+            System.arraycopy(data, 0, joined, keep, length);
+            this.dictionary = joined;
+        }
+        this.block = new byte[BLOCK_SIZE];
+        this.blockLength = 0;
+        this.writeCompleted(this.maxPending);
+    }
+
+    /**
+     * Writes {@code value} as four little-endian bytes.
+     */
+    private void writeIntLE(long value) throws IOException {
+        for (int i = 0; i < 4; i++) {
+            this.out.write((int) (value >>> (8 * i)) & 0xFF);
+        }
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor with the default level and one thread per processor.
+     *
+     * @param out
+     *            the stream to write the gzip data to
+     * @throws IOException
+     *             if the header cannot be written
+     */
+    public ParallelGzipOutputStream(OutputStream out) throws IOException {
+        this(out, Deflater.DEFAULT_COMPRESSION,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param out
+     *            the stream to write the gzip data to
+     * @param level
+     *            the deflate compression level
+     * @param threads
+     *            the number of compression threads
+     * @throws IOException
+     *             if the header cannot be written
+     * @requires threads > 0
+     */
+    public ParallelGzipOutputStream(OutputStream out, int level, int threads)
+            throws IOException {
+        assert threads > 0 : "Violation of: threads > 0";
+
+        this.out = out;
+        this.level = level;
+        this.maxPending = 2 * threads;
+        this.pool = Executors.newFixedThreadPool(threads,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "gzip-deflate");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        this.out.write(HEADER);
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    @Override
+    public void write(int b) throws IOException {
+        this.write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (this.closed) {
+            throw new IOException("Stream closed");
+        }
+        this.crc.update(b, off, len);
+        this.totalLength += len;
+        int offset = off;
+        int remaining = len;
+        while (remaining > 0) {
+            int n = Math.min(remaining, BLOCK_SIZE - this.blockLength);
+            System.arraycopy(b, offset, this.block, this.blockLength, n);
+            this.blockLength += n;
+            offset += n;
+            remaining -= n;
+            if (this.blockLength == BLOCK_SIZE) {
+                this.submitBlock(false);
+            }
+        }
+    }
+
+    /**
+     * Writes every block compressed so far; the block being filled is kept
+     * until it is full or the stream is closed.
+     *
+     * @throws IOException
+     *             if writing fails
+     */
+    @Override
+    public void flush() throws IOException {
+        this.writeCompleted(0);
+        this.out.flush();
+    }
+
+    /**
+     * Compresses the last block, writes the gzip trailer and closes the
+     * underlying stream.
+     *
+     * @throws IOException
+     *             if writing fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            this.submitBlock(true);
+            this.writeCompleted(0);
+            this.writeIntLE(this.crc.getValue());
+            this.writeIntLE(this.totalLength);
+        } finally {
+            this.pool.shutdownNow();
+            this.out.close();
+        }
+    }
+
+}
@@ -0,0 +1,295 @@
+import java.util.*;
+import java.io.*;
+
+/**
+ * {@code SourceMap} relating character offsets in a translated file to
+ * offsets in its source. Only the changed tokens are recorded, each as three
+ * delta-encoded varints (gap since the previous change, source length,
+ * translated length); between changes the two files differ by a constant
+ * shift. Every {@code STRIDE} entries a checkpoint stores absolute offsets, so
+ * a lookup is a binary search over checkpoints plus at most {@code STRIDE}
+ * decoded entries.
+ */
+public final class SourceMap {
+
+    /**
+     * Incrementally builds a {@code SourceMap} while the output is written.
+     */
+    public static final class Builder {
+
+        /**
+         * Encoded entries.
+         */
+        private byte[] data = new byte[256];
+
+        /**
+         * Number of bytes used in {@code data}.
+         */
+        private int dataLength;
+
+        /**
+         * Number of entries added.
+         */
+        private int count;
+
+        /**
+         * Source offset just past the last changed token.
+         */
+        private int inEnd;
+
+        /**
+         * Output offset just past the last changed token.
+         */
+        private int outEnd;
+
+        /**
+         * Checkpoints: source offset, output offset and data position before
+         * every {@code STRIDE}-th entry.
+         */
+        private int[] checkpoints = new int[3 * 16];
+
+        /**
+         * Appends {@code value} as a varint to {@code data}.
+         */
+        private void writeVarInt(int value) {
+            if (this.dataLength + 5 > this.data.length) {
+                this.data = Arrays.copyOf(this.data, this.data.length * 2);
+            }
+            int v = value;
+            while ((v & ~0x7F) != 0) {
+                this.data[this.dataLength++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            this.data[this.dataLength++] = (byte) v;
+        }
+
+        /**
+         * Records that the token at source offset {@code inStart} of length
+         * {@code inLength} was replaced by one of length {@code outLength}.
+         *
+         * @param inStart
+         *            the source offset of the token
+         * @param inLength
+         *            the source length of the token
+         * @param outLength
+         *            the translated length of the token
+         * @updates this
+         * @requires inStart is at or after the end of the previous token added
+         */
+        public void add(int inStart, int inLength, int outLength) {
+            assert inStart >= this.inEnd
+                    : "Violation of: inStart is at or after the previous token";
+
+            if (this.count % STRIDE == 0) {
+                int k = 3 * (this.count / STRIDE);
+                if (k + 3 > this.checkpoints.length) {
+                    this.checkpoints = Arrays.copyOf(this.checkpoints,
+                            this.checkpoints.length * 2);
+                }
+                this.checkpoints[k] = this.inEnd;
+                this.checkpoints[k + 1] = this.outEnd;
+                this.checkpoints[k + 2] = this.dataLength;
+            }
+            int gap = inStart - this.inEnd;
+            this.writeVarInt(gap);
+            this.writeVarInt(inLength);
+            this.writeVarInt(outLength);
+            this.inEnd = inStart + inLength;
+            this.outEnd += gap + outLength;
+            this.count++;
+        }
+
+        /**
+         * Returns the source map of the entries added so far.
+         *
+         * @return the source map
+         */
+        public SourceMap build() {
+            int checkpointCount = (this.count + STRIDE - 1) / STRIDE;
+            return new SourceMap(Arrays.copyOf(this.data, this.dataLength),
+                    Arrays.copyOf(this.checkpoints, 3 * checkpointCount),
+                    this.count);
+        }
+
+    }
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Entries between checkpoints.
+     */
+    private static final int STRIDE = 32;
+
+    /**
+     * Encoded entries.
+     */
+    private final byte[] data;
+
+    /**
+     * Checkpoints: source offset, output offset and data position before
+     * every {@code STRIDE}-th entry.
+     */
+    private final int[] checkpoints;
+
+    /**
+     * Number of entries.
+     */
+    private final int count;
+
+    /**
+     * Constructor.
+     */
+    private SourceMap(byte[] data, int[] checkpoints, int count) {
+        this.data = data;
+        this.checkpoints = checkpoints;
+        this.count = count;
+    }
+
+    /**
+     * Decodes the three varints of the entry at {@code data[pos]} into
+     * {@code entry} and returns the position of the next entry.
+     */
+    private static int decode(byte[] data, int pos, int[] entry) {
+        int p = pos;
+        for (int f = 0; f < entry.length; f++) {
+            int value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = data[p++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            entry[f] = value;
+        }
+        return p;
+    }
+
+    /**
+     * Maps {@code offset} from one side to the other: {@code from} is 0 to
+     * map source to output and 1 to map output to source.
+     */
+    private int map(int offset, int from) {
+        int lo = 0;
+        int hi = this.checkpoints.length / 3 - 1;
+        int k = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.checkpoints[3 * mid + from] <= offset) {
+                k = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        if (k < 0) {
+            return offset;
+        }
+
+        int[] ends = { this.checkpoints[3 * k], this.checkpoints[3 * k + 1] };
+        int pos = this.checkpoints[3 * k + 2];
+        int[] entry = new int[3];
+        for (int n = k * STRIDE; n < this.count; n++) {
+            pos = decode(this.data, pos, entry);
+            int gap = entry[0];
+            int[] lengths = { entry[1], entry[2] };
+            int start = ends[from] + gap;
+            if (offset < start) {
+                break;
+            }
+            if (offset < start + lengths[from]) {
+                return ends[1 - from] + gap
+                        + Math.min(offset - start, lengths[1 - from]);
+            }
+            ends[0] += gap + lengths[0];
+            ends[1] += gap + lengths[1];
+        }
+        return ends[1 - from] + (offset - ends[from]);
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Returns the output offset of source offset {@code inOffset}. An offset
+     * inside a changed token maps to the same distance into its translation,
+     * clamped to the translation's end.
+     *
+     * @param inOffset
+     *            the source offset
+     * @return the output offset
+     * @requires 0 <= inOffset
+     */
+    public int toOutput(int inOffset) {
+        return this.map(inOffset, 0);
+    }
+
+    /**
+     * Returns the source offset of output offset {@code outOffset}. An offset
+     * inside a changed token maps to the same distance into its source,
+     * clamped to the source token's end.
+     *
+     * @param outOffset
+     *            the output offset
+     * @return the source offset
+     * @requires 0 <= outOffset
+     */
+    public int toInput(int outOffset) {
+        return this.map(outOffset, 1);
+    }
+
+    /**
+     * Returns the number of changed tokens recorded.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return this.count;
+    }
+
+    /**
+     * Writes this source map to {@code out}; checkpoints are not written and
+     * are rebuilt by {@code readFrom}.
+     *
+     * @param out
+     *            the stream to write to
+     * @throws IOException
+     *             if writing fails
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(this.count);
+        data.writeInt(this.data.length);
+        data.write(this.data);
+        data.flush();
+    }
+
+    /**
+     * Reads a source map written by {@code writeTo}.
+     *
+     * @param in
+     *            the stream to read from
+     * @return the source map
+     * @throws IOException
+     *             if reading fails
+     */
+    public static SourceMap readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int count = data.readInt();
+        byte[] bytes = new byte[data.readInt()];
+        data.readFully(bytes);
+
+        Builder builder = new Builder();
+        int pos = 0;
+        int[] entry = new int[3];
+        for (int n = 0; n < count; n++) {
+            pos = decode(bytes, pos, entry);
+            builder.add(builder.inEnd + entry[0], entry[1], entry[2]);
+        }
+        return builder.build();
+    }
+
+}
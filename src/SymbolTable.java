@@ -0,0 +1,261 @@
+import java.util.*;
+
+/**
+ * {@code SymbolTable} interning every distinct token exactly once and handing
+ * out dense {@code int} ids for it, so that a token stream can be stored as an
+ * {@code int[]} instead of one {@code String} per occurrence.
+ */
+public final class SymbolTable {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Initial number of slots in the hash table; always a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Interned symbols, indexed by id.
+     */
+    private String[] symbols;
+
+    /**
+     * Cached hash codes of the interned symbols, indexed by id.
+     */
+    private int[] hashes;
+
+    /**
+     * Open addressing hash table holding {@code id + 1}, or 0 for an empty
+     * slot.
+     */
+    private int[] slots;
+
+    /**
+     * Number of interned symbols.
+     */
+    private int size;
+
+    /**
+     * Computes the same hash as {@code String.hashCode} for the characters
+     * {@code text[start, end)} without allocating a {@code String}.
+     */
+    private static int hash(CharSequence text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        return h;
+    }
+
+    /**
+     * Spreads the bits of {@code h} so that close hash codes land in distant
+     * slots.
+     */
+    private static int mix(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Reports whether symbol {@code id} equals {@code text[start, end)}.
+     */
+    private boolean matches(int id, CharSequence text, int start, int end) {
+        String symbol = this.symbols[id];
+        int len = end - start;
+        if (symbol.length() != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (symbol.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the slot holding {@code text[start, end)}, or the empty slot
+     * where it would be inserted.
+     */
+    private int slotOf(CharSequence text, int start, int end, int h) {
+        int mask = this.slots.length - 1;
+        int slot = mix(h) & mask;
+        while (this.slots[slot] != 0) {
+            int id = this.slots[slot] - 1;
+            if (this.hashes[id] == h && this.matches(id, text, start, end)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Doubles the hash table and the symbol arrays.
+     */
+    private void grow() {
+        int[] newSlots = new int[this.slots.length * 2];
+        int mask = newSlots.length - 1;
+        for (int id = 0; id < this.size; id++) {
+            int slot = mix(this.hashes[id]) & mask;
+            while (newSlots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newSlots[slot] = id + 1;
+        }
+        this.slots = newSlots;
+        this.symbols = Arrays.copyOf(this.symbols, newSlots.length / 2);
+        this.hashes = Arrays.copyOf(this.hashes, newSlots.length / 2);
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public SymbolTable() {
+        this.slots = new int[INITIAL_CAPACITY];
+        this.symbols = new String[INITIAL_CAPACITY / 2];
+        this.hashes = new int[INITIAL_CAPACITY / 2];
+        this.size = 0;
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Returns the id of {@code text[start, end)}, interning it first if it has
+     * not been seen before. A new {@code String} is allocated only for symbols
+     * that are not yet in the table.
+     *
+     * @param text
+     *            the text holding the symbol
+     * @param start
+     *            the index of the first character of the symbol
+     * @param end
+     *            the index one past the last character of the symbol
+     * @return the id of the symbol
+     * @requires 0 <= start <= end <= |text|
+     * @ensures symbol(intern) = text[start, end)
+     */
+    public int intern(CharSequence text, int start, int end) {
+        assert text != null : "Violation of: text is not null";
+        assert 0 <= start && start <= end && end <= text.length()
+                : "Violation of: 0 <= start <= end <= |text|";
+
+        int h = hash(text, start, end);
+        int slot = this.slotOf(text, start, end, h);
+        if (this.slots[slot] != 0) {
+            return this.slots[slot] - 1;
+        }
+        int id = this.size;
+        this.symbols[id] = text.subSequence(start, end).toString();
+        this.hashes[id] = h;
+        this.slots[slot] = id + 1;
+        this.size++;
+        if (this.size * 2 >= this.slots.length) {
+            this.grow();
+        }
+        return id;
+    }
+
+    /**
+     * Returns the id of {@code symbol}, interning it first if it has not been
+     * seen before.
+     *
+     * @param symbol
+     *            the symbol to intern
+     * @return the id of the symbol
+     * @ensures symbol(intern) = symbol
+     */
+    public int intern(String symbol) {
+        assert symbol != null : "Violation of: symbol is not null";
+
+        return this.intern(symbol, 0, symbol.length());
+    }
+
+    /**
+     * Returns the id of {@code text[start, end)}, or -1 if it has not been
+     * interned. Never allocates.
+     *
+     * @param text
+     *            the text holding the symbol
+     * @param start
+     *            the index of the first character of the symbol
+     * @param end
+     *            the index one past the last character of the symbol
+     * @return the id of the symbol, or -1
+     * @requires 0 <= start <= end <= |text|
+     */
+    public int find(CharSequence text, int start, int end) {
+        assert text != null : "Violation of: text is not null";
+
+        int slot = this.slotOf(text, start, end, hash(text, start, end));
+        return this.slots[slot] - 1;
+    }
+
+    /**
+     * Returns the symbol with the given id.
+     *
+     * @param id
+     *            the id of the symbol
+     * @return the interned symbol
+     * @requires 0 <= id < size
+     */
+    public String symbol(int id) {
+        assert 0 <= id && id < this.size : "Violation of: 0 <= id < size";
+
+        return this.symbols[id];
+    }
+
+    /**
+     * Returns the number of interned symbols.
+     *
+     * @return the number of interned symbols
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Compiles {@code dictionary} into an id to id translation table over this
+     * symbol table. Both the keys and the definitions are interned. Ids that
+     * are not keys of {@code dictionary} map to themselves, and ids interned
+     * after the table was compiled (at or past its length) are untranslated.
+     *
+     * @param dictionary
+     *            the word to definition map
+     * @return the translation table
+     * @ensures <pre>
+     * for all id: integer where (0 <= id < |compile|)
+     *   (if symbol(id) is in DOMAIN(dictionary)
+     *    then symbol(compile[id]) = dictionary(symbol(id))
+     *    else compile[id] = id)
+     * </pre>
+     */
+    public int[] compile(Map<String, String> dictionary) {
+        assert dictionary != null : "Violation of: dictionary is not null";
+
+        int[] keys = new int[dictionary.size()];
+        int[] values = new int[dictionary.size()];
+        int n = 0;
+        for (Map.Entry<String, String> entry : dictionary.entrySet()) {
+            keys[n] = this.intern(entry.getKey());
+            values[n] = this.intern(entry.getValue());
+            n++;
+        }
+        int[] table = new int[this.size];
+        for (int id = 0; id < table.length; id++) {
+            table[id] = id;
+        }
+        for (int i = 0; i < n; i++) {
+            table[keys[i]] = values[i];
+        }
+        return table;
+    }
+
+}
@@ -0,0 +1,258 @@
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+
+/**
+ * {@code TokenArena} translating very large inputs chunk by chunk without
+ * creating a {@code String} per token. The token spans and the translated
+ * bytes of a chunk are kept in direct (off-heap) buffers that are reused for
+ * every chunk, so they are released in bulk when the chunk has been written
+ * and never reach the garbage collector. Words are looked up in place with
+ * {@code SymbolTable.find}, and translations are encoded once up front.
+ *
+ * <p>
+ * Unlike {@code Main.tokens}, line terminators are copied through exactly as
+ * they are in the input.
+ */
+public final class TokenArena {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Bytes per span: start, length and translation id.
+     */
+    private static final int SPAN_BYTES = 12;
+
+    /**
+     * Size of the direct output buffer.
+     */
+    private static final int OUTPUT_BYTES = 1 << 16;
+
+    /**
+     * The tokenizer profile of the input language.
+     */
+    private final TokenizerProfile profile;
+
+    /**
+     * The dictionary keys, interned.
+     */
+    private final SymbolTable symbols;
+
+    /**
+     * Encoded translation of each symbol id, or null if it is untranslated.
+     */
+    private final byte[][] translations;
+
+    /**
+     * Encoder for untranslated spans.
+     */
+    private final CharsetEncoder encoder;
+
+    /**
+     * Input characters of the current chunk.
+     */
+    private char[] chars;
+
+    /**
+     * Token spans of the current chunk, off-heap.
+     */
+    private ByteBuffer spans;
+
+    /**
+     * Translated bytes of the current chunk, off-heap.
+     */
+    private final ByteBuffer output;
+
+    /**
+     * Returns the end of the last complete token in {@code chars[0, length)}
+     * when more input may follow, or 0 if there is none.
+     */
+    private int lastBoundary(int length) {
+        for (int i = length - 1; i > 0; i--) {
+            if (this.profile.isSeparator(this.chars[i - 1])
+                    != this.profile.isSeparator(this.chars[i])) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Tokenizes {@code chars[0, end)} into {@code spans}.
+     */
+    private void tokenize(int end) {
+        CharBuffer text = CharBuffer.wrap(this.chars);
+        this.spans.clear();
+        int i = 0;
+        while (i < end) {
+            int tokenEnd = i + 1;
+            boolean separator = this.profile.isSeparator(this.chars[i]);
+            while (tokenEnd < end
+                    && this.profile.isSeparator(this.chars[tokenEnd])
+                            == separator) {
+                tokenEnd++;
+            }
+            int id = separator ? -1 : this.symbols.find(text, i, tokenEnd);
+            if (id >= 0 && (id >= this.translations.length
+                    || this.translations[id] == null)) {
+                id = -1;
+            }
+            this.spans.putInt(i).putInt(tokenEnd - i).putInt(id);
+            i = tokenEnd;
+        }
+        this.spans.flip();
+    }
+
+    /**
+     * Writes {@code output} to {@code out} and empties it.
+     */
+    private void drain(WritableByteChannel out) throws IOException {
+        this.output.flip();
+        while (this.output.hasRemaining()) {
+            out.write(this.output);
+        }
+        this.output.clear();
+    }
+
+    /**
+     * Writes the translation of the spans of the current chunk to
+     * {@code out}, then releases them.
+     */
+    private long emit(WritableByteChannel out) throws IOException {
+        CharBuffer text = CharBuffer.wrap(this.chars);
+        long written = 0;
+        while (this.spans.hasRemaining()) {
+            int start = this.spans.getInt();
+            int length = this.spans.getInt();
+            int id = this.spans.getInt();
+            if (id >= 0) {
+                byte[] bytes = this.translations[id];
+                if (this.output.remaining() < bytes.length) {
+                    written += this.output.position();
+                    this.drain(out);
+                }
+                if (bytes.length > this.output.remaining()) {
+                    out.write(ByteBuffer.wrap(bytes));
+                    written += bytes.length;
+                } else {
+                    this.output.put(bytes);
+                }
+            } else {
+                text.limit(start + length).position(start);
+                CoderResult result = this.encoder.encode(text, this.output,
+                        false);
+                while (result.isOverflow()) {
+                    written += this.output.position();
+                    this.drain(out);
+                    result = this.encoder.encode(text, this.output, false);
+                }
+            }
+        }
+        written += this.output.position();
+        this.drain(out);
+        this.spans.clear();
+        return written;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor.
+     *
+     * @param dictionary
+     *            the word to definition map
+     * @param profile
+     *            the tokenizer profile of the input language
+     * @param charset
+     *            the charset to write the output in
+     * @param chunkChars
+     *            the number of input characters per chunk; grows if a single
+     *            token is longer
+     * @requires chunkChars > 0
+     */
+    public TokenArena(Map<String, String> dictionary, TokenizerProfile profile,
+            Charset charset, int chunkChars) {
+        assert chunkChars > 0 : "Violation of: chunkChars > 0";
+
+        this.profile = profile;
+        this.symbols = new SymbolTable();
+        int[] table = this.symbols.compile(dictionary);
+        this.translations = new byte[table.length][];
+        for (int id = 0; id < table.length; id++) {
+            if (table[id] != id) {
+                this.translations[id] = this.symbols.symbol(table[id])
+                        .getBytes(charset);
+            }
+        }
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.chars = new char[chunkChars];
+        this.spans = ByteBuffer.allocateDirect(chunkChars * SPAN_BYTES);
+        this.output = ByteBuffer.allocateDirect(OUTPUT_BYTES);
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Translates all of {@code in} into {@code out}, one chunk at a time.
+     * Each chunk ends at the last token boundary read so far; the rest is
+     * carried over to the next chunk.
+     *
+     * @param in
+     *            the input
+     * @param out
+     *            the channel to write the translation to
+     * @return the number of bytes written
+     * @throws IOException
+     *             if reading or writing fails
+     * @updates in, out
+     */
+    public long translate(Reader in, WritableByteChannel out)
+            throws IOException {
+        this.encoder.reset();
+        long written = 0;
+        int length = 0;
+        boolean endOfInput = false;
+        while (!endOfInput || length > 0) {
+            while (!endOfInput && length < this.chars.length) {
+                int read = in.read(this.chars, length,
+                        this.chars.length - length);
+                if (read < 0) {
+                    endOfInput = true;
+                } else {
+                    length += read;
+                }
+            }
+
+            int end = endOfInput ? length : this.lastBoundary(length);
+            if (end == 0 && !endOfInput) {
+                this.chars = Arrays.copyOf(this.chars, this.chars.length * 2);
+                this.spans = ByteBuffer
+                        .allocateDirect(this.chars.length * SPAN_BYTES);
+                continue;
+            }
+
+            this.tokenize(end);
+            written += this.emit(out);
+
+            System.arraycopy(this.chars, end, this.chars, 0, length - end);
+            length -= end;
+        }
+        CharBuffer empty = CharBuffer.allocate(0);
+        this.encoder.encode(empty, this.output, true);
+        this.encoder.flush(this.output);
+        written += this.output.position();
+        this.drain(out);
+        return written;
+    }
+
+}
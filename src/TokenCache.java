@@ -0,0 +1,313 @@
+import java.util.*;
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.security.*;
+
+/**
+ * {@code TokenCache} keeping the tokenized form of source files on disk,
+ * keyed by a hash of their content, tokenizer profile and the default
+ * charset they are decoded with. When only the
+ * dictionary changes, a cached file is translated by pure table lookup over
+ * its stored token spans without being scanned again.
+ *
+ * <p>
+ * A cache file holds the distinct symbols once, as length-prefixed UTF-8,
+ * followed by the token stream as variable-length symbol ids and one kind
+ * byte per token. A cache file that does not decode to a valid stream is
+ * treated as missing.
+ */
+public final class TokenCache {
+
+    /**
+     * A cached tokenized file.
+     */
+    public static final class Entry {
+
+        /**
+         * The symbols of the file.
+         */
+        private final SymbolTable symbols;
+
+        /**
+         * The token stream of the file.
+         */
+        private final TokenStream tokens;
+
+        /**
+         * Constructor.
+         */
+        private Entry(SymbolTable symbols, TokenStream tokens) {
+            this.symbols = symbols;
+            this.tokens = tokens;
+        }
+
+        /**
+         * Returns the symbol table the tokens are interned in; a fresh table
+         * per {@code get}, so it may be extended by {@code compile}.
+         *
+         * @return the symbol table
+         */
+        public SymbolTable symbols() {
+            return this.symbols;
+        }
+
+        /**
+         * Returns the token stream.
+         *
+         * @return the token stream
+         */
+        public TokenStream tokens() {
+            return this.tokens;
+        }
+
+    }
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Marks a cache file, and its format version.
+     */
+    private static final int MAGIC = 0x544F4B01;
+
+    /**
+     * The cache directory.
+     */
+    private final Path directory;
+
+    /**
+     * Returns the hex SHA-256 of the profile name, the default charset name
+     * and {@code content}.
+     */
+    private static String key(byte[] content, TokenizerProfile profile) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(profile.name().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(Charset.defaultCharset().name()
+                .getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        byte[] hash = digest.digest(content);
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Writes {@code value} as a variable-length unsigned integer, seven bits
+     * per byte.
+     */
+    private static void writeVarInt(DataOutputStream out, int value)
+            throws IOException {
+        int v = value;
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    /**
+     * Reads a variable-length unsigned integer written by
+     * {@code writeVarInt}, which must be less than {@code bound}.
+     */
+    private static int readVarInt(DataInputStream in, long bound)
+            throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (shift > 28) {
+                throw new IOException("Malformed integer");
+            }
+            b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        if (value >= bound) {
+            throw new IOException("Integer " + value + " out of range");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Writes {@code entry} to {@code file} through a temporary file, so a
+     * reader never sees a partly written cache file.
+     */
+    private static void write(Entry entry, Path file) throws IOException {
+        Path temp = Files.createTempFile(file.getParent(), "tok", ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp)));
+            try {
+                SymbolTable symbols = entry.symbols;
+                TokenStream tokens = entry.tokens;
+                out.writeInt(MAGIC);
+                writeVarInt(out, symbols.size());
+                for (int id = 0; id < symbols.size(); id++) {
+                    byte[] utf8 = symbols.symbol(id)
+                            .getBytes(StandardCharsets.UTF_8);
+                    writeVarInt(out, utf8.length);
+                    out.write(utf8);
+                }
+                writeVarInt(out, tokens.length());
+                for (int i = 0; i < tokens.length(); i++) {
+                    writeVarInt(out, tokens.id(i));
+                }
+                for (int i = 0; i < tokens.length(); i++) {
+                    out.writeByte(tokens.kind(i));
+                }
+            } finally {
+                out.close();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Reads an entry written by {@code write}; every count and length must
+     * fit in the file, every id must name a symbol and every kind must be a
+     * {@code TokenStream} kind code.
+     */
+    private static Entry read(Path file) throws IOException {
+        long size = Files.size(file);
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a token cache file: " + file);
+            }
+            SymbolTable symbols = new SymbolTable();
+            int symbolCount = readVarInt(in, size);
+            for (int id = 0; id < symbolCount; id++) {
+                byte[] utf8 = new byte[readVarInt(in, size)];
+                in.readFully(utf8);
+                symbols.intern(new String(utf8, StandardCharsets.UTF_8));
+            }
+            if (symbols.size() != symbolCount) {
+                throw new IOException("Duplicate symbols in " + file);
+            }
+            int length = readVarInt(in, size);
+            int[] ids = new int[length];
+            for (int i = 0; i < length; i++) {
+                ids[i] = readVarInt(in, symbolCount);
+            }
+            TokenStream tokens = new TokenStream(length);
+            for (int i = 0; i < length; i++) {
+                byte kind = in.readByte();
+                if (kind < TokenStream.WORD || kind > TokenStream.LITERAL) {
+                    throw new IOException("Bad token kind " + kind + " in "
+                            + file);
+                }
+                tokens.add(ids[i], kind);
+            }
+            return new Entry(symbols, tokens);
+        } finally {
+            in.close();
+        }
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor.
+     *
+     * @param directory
+     *            the directory to keep cache files in; created if missing
+     */
+    public TokenCache(String directory) {
+        this.directory = Paths.get(directory);
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Returns the tokenized form of {@code fileName}, from the cache if a
+     * file with the same content was tokenized with {@code profile} before,
+     * otherwise by tokenizing it and storing the result. A cache file that
+     * cannot be read is replaced.
+     *
+     * @param fileName
+     *            the source file
+     * @param profile
+     *            the tokenizer profile of the source language
+     * @return the symbols and tokens of the file, or null if the file cannot
+     *         be read
+     */
+    public Entry get(String fileName, TokenizerProfile profile) {
+        byte[] content;
+        try {
+            content = Files.readAllBytes(Paths.get(fileName));
+        } catch(IOException e) {
+            System.err.println("Error opening file " + fileName);
+            return null;
+        }
+
+        Path cached = this.directory.resolve(key(content, profile) + ".tok");
+        if (Files.isRegularFile(cached)) {
+            try {
+                return read(cached);
+            } catch(IOException e) {
+                System.err.println("Error reading token cache " + cached
+                        + ", tokenizing again");
+            }
+        }
+
+        SymbolTable symbols = new SymbolTable();
+        TokenStream tokens = Main.tokenStream(new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(content),
+                        Charset.defaultCharset())),
+                symbols, profile);
+        Entry entry = new Entry(symbols, tokens);
+        try {
+            Files.createDirectories(this.directory);
+            write(entry, cached);
+        } catch(IOException e) {
+            System.err.println("Error writing token cache " + cached);
+        }
+        return entry;
+    }
+
+    /**
+     * Translates {@code fileName} with {@code dictionary} into
+     * {@code outFileName}, going through the cache.
+     *
+     * @param fileName
+     *            the source file
+     * @param outFileName
+     *            the file to write the translation to
+     * @param dictionary
+     *            the word to definition map
+     * @return whether the translation was written completely; false if the
+     *         source cannot be read or the output cannot be written
+     */
+    public boolean translate(String fileName, String outFileName,
+            Map<String, String> dictionary) {
+        TokenizerProfile profile = TokenizerProfile.forFileName(fileName);
+        Entry entry = this.get(fileName,
+                profile == null ? TokenizerProfile.JAVA : profile);
+        if (entry == null) {
+            return false;
+        }
+        return Main.detokenize(
+                entry.tokens.translate(entry.symbols.compile(dictionary)),
+                entry.symbols, outFileName);
+    }
+
+}
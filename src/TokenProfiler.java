@@ -0,0 +1,389 @@
+import java.util.*;
+import java.io.*;
+
+/**
+ * {@code TokenProfiler} finding the tokens that dominate a workload, in fixed
+ * memory however large the input. Every token is counted in a count-min
+ * sketch, together with the time spent looking it up; the {@code k} tokens
+ * with the highest estimated counts are tracked as heavy hitters, with
+ * whether they are in the dictionary. Estimates never undercount, and
+ * overcount by at most {@code e / width} of the total with probability
+ * {@code 1 - e^-depth}.
+ */
+public final class TokenProfiler {
+
+    /**
+     * A heavy hitter: a token with its estimated count and lookup time.
+     */
+    public static final class Entry {
+
+        /**
+         * The token.
+         */
+        private final String token;
+
+        /**
+         * Whether the token is in the dictionary.
+         */
+        private final boolean hit;
+
+        /**
+         * The estimated count.
+         */
+        private long count;
+
+        /**
+         * The estimated lookup time, in nanoseconds.
+         */
+        private long nanos;
+
+        /**
+         * Constructor.
+         */
+        Entry(String token, boolean hit) {
+            this.token = token;
+            this.hit = hit;
+        }
+
+        /**
+         * Returns the token.
+         *
+         * @return the token
+         */
+        public String token() {
+            return this.token;
+        }
+
+        /**
+         * Returns whether the token is in the dictionary.
+         *
+         * @return true if the token is translated
+         */
+        public boolean hit() {
+            return this.hit;
+        }
+
+        /**
+         * Returns the estimated number of occurrences.
+         *
+         * @return the count
+         */
+        public long count() {
+            return this.count;
+        }
+
+        /**
+         * Returns the estimated time spent looking the token up.
+         *
+         * @return the time, in nanoseconds
+         */
+        public long nanos() {
+            return this.nanos;
+        }
+
+    }
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Number of tokens {@code profile} collects before timing their lookups.
+     */
+    private static final int BATCH = 256;
+
+    /**
+     * Odd multipliers for the row hashes.
+     */
+    private static final long[] SEEDS = { 0x9E3779B97F4A7C15L,
+            0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L,
+            0xFF51AFD7ED558CCDL, 0xC4CEB9FE1A85EC53L, 0x94D049BB133111EBL,
+            0xBF58476D1CE4E5B9L };
+
+    /**
+     * Occurrence counters, {@code depth} rows of {@code width}.
+     */
+    private final long[][] counts;
+
+    /**
+     * Lookup time counters, parallel to {@code counts}.
+     */
+    private final long[][] times;
+
+    /**
+     * {@code width - 1}; the width is a power of two.
+     */
+    private final int mask;
+
+    /**
+     * The number of heavy hitters tracked.
+     */
+    private final int k;
+
+    /**
+     * The heavy hitters.
+     */
+    private final Map<String, Entry> top = new HashMap<>();
+
+    /**
+     * A lower bound on the smallest count in {@code top}.
+     */
+    private long topMin;
+
+    /**
+     * Number of tokens recorded.
+     */
+    private long total;
+
+    /**
+     * Total lookup time recorded, in nanoseconds.
+     */
+    private long totalNanos;
+
+    /**
+     * Returns the column of {@code hash} in row {@code row}.
+     */
+    private int column(int hash, int row) {
+        return (int) ((hash * SEEDS[row]) >>> 32) & this.mask;
+    }
+
+    /**
+     * Returns the heavy hitter with the smallest count.
+     */
+    private Entry smallest() {
+        Entry min = null;
+        for (Entry e : this.top.values()) {
+            if (min == null || e.count < min.count) {
+                min = e;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Returns {@code token} with line terminators and tabs made visible.
+     */
+    private static String escape(String token) {
+        return token.replace("\n", "\\n").replace("\r", "\\r").replace("\t",
+                "\\t");
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor.
+     *
+     * @param width
+     *            the number of counters per row; rounded up to a power of two
+     * @param depth
+     *            the number of rows
+     * @param k
+     *            the number of heavy hitters to track
+     * @requires width > 0 and 0 < depth <= 8 and k > 0
+     */
+    public TokenProfiler(int width, int depth, int k) {
+        assert width > 0 : "Violation of: width > 0";
+        assert 0 < depth && depth <= SEEDS.length
+                : "Violation of: 0 < depth <= 8";
+        assert k > 0 : "Violation of: k > 0";
+
+        int w = Integer.highestOneBit(Math.max(width - 1, 1)) << 1;
+        this.mask = w - 1;
+        this.counts = new long[depth][w];
+        this.times = new long[depth][w];
+        this.k = k;
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Records one occurrence of {@code token}.
+     *
+     * @param token
+     *            the token
+     * @param hit
+     *            whether the token is in the dictionary
+     * @param nanos
+     *            the time spent looking it up
+     * @updates this
+     */
+    public void record(String token, boolean hit, long nanos) {
+        int hash = token.hashCode();
+        long count = Long.MAX_VALUE;
+        long time = Long.MAX_VALUE;
+        for (int row = 0; row < this.counts.length; row++) {
+            int c = this.column(hash, row);
+            count = Math.min(count, ++this.counts[row][c]);
+            time = Math.min(time, this.times[row][c] += nanos);
+        }
+        this.total++;
+        this.totalNanos += nanos;
+
+        Entry entry = this.top.get(token);
+        if (entry == null) {
+            if (this.top.size() >= this.k) {
+                if (count <= this.topMin) {
+                    return;
+                }
+                Entry min = this.smallest();
+                this.topMin = min.count;
+                if (count <= min.count) {
+                    return;
+                }
+                this.top.remove(min.token);
+            }
+            entry = new Entry(token, hit);
+            this.top.put(token, entry);
+        }
+        entry.count = count;
+        entry.nanos = time;
+    }
+
+    /**
+     * Returns the smallest time measured between two consecutive
+     * {@code System.nanoTime} calls, the cost of timing nothing.
+     */
+    private static long timerOverhead() {
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            long start = System.nanoTime();
+            overhead = Math.min(overhead, System.nanoTime() - start);
+        }
+        return overhead;
+    }
+
+    /**
+     * Looks up and records the tokens of {@code batch}, grouped by token:
+     * the lookups of each distinct token are timed together, less
+     * {@code overhead}, and each occurrence is charged an equal share.
+     */
+    private void recordBatch(List<String> batch,
+            Map<String, String> dictionary, Map<String, int[]> groups,
+            long overhead) {
+        groups.clear();
+        for (String token : batch) {
+            int[] count = groups.get(token);
+            if (count == null) {
+                groups.put(token, new int[] { 1 });
+            } else {
+                count[0]++;
+            }
+        }
+        for (Map.Entry<String, int[]> group : groups.entrySet()) {
+            String token = group.getKey();
+            int count = group.getValue()[0];
+            boolean hit = false;
+            long start = System.nanoTime();
+            for (int j = 0; j < count; j++) {
+                hit = dictionary.get(token) != null;
+            }
+            long elapsed = Math.max(System.nanoTime() - start - overhead, 0);
+            for (int j = 0; j < count; j++) {
+                this.record(token, hit,
+                        elapsed / count + (j < elapsed % count ? 1 : 0));
+            }
+        }
+        batch.clear();
+    }
+
+    /**
+     * Tokenizes {@code in} line by line with {@code profile}, looks every
+     * token up in {@code dictionary} the way {@code Main.translate} does, and
+     * records it. Tokens are collected in batches of {@code BATCH}, and the
+     * lookups of each distinct token in a batch are timed together with one
+     * pair of {@code System.nanoTime} calls, less the cost of the calls
+     * themselves; timing every lookup on its own would mostly measure the
+     * timer. A token's time therefore reflects its own lookups, not just how
+     * often it occurs. Only one line and one batch are held at a time.
+     *
+     * @param in
+     *            the input
+     * @param dictionary
+     *            the word to definition map
+     * @param profile
+     *            the tokenizer profile of the input language
+     * @throws IOException
+     *             if reading fails
+     * @updates this, in
+     */
+    public void profile(BufferedReader in, Map<String, String> dictionary,
+            TokenizerProfile profile) throws IOException {
+        long overhead = timerOverhead();
+        List<String> batch = new ArrayList<>(BATCH);
+        Map<String, int[]> groups = new LinkedHashMap<>();
+        String line;
+        while ((line = in.readLine()) != null) {
+            String text = line + "\n";
+            int i = 0;
+            while (i < text.length()) {
+                int end = profile.tokenEnd(text, i);
+                batch.add(text.substring(i, end));
+                i = end;
+                if (batch.size() == BATCH) {
+                    this.recordBatch(batch, dictionary, groups, overhead);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            this.recordBatch(batch, dictionary, groups, overhead);
+        }
+    }
+
+    /**
+     * Returns the heavy hitters, most frequent first.
+     *
+     * @return the heavy hitters
+     */
+    public List<Entry> top() {
+        List<Entry> entries = new ArrayList<>(this.top.values());
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return Long.compare(b.count, a.count);
+            }
+        });
+        return entries;
+    }
+
+    /**
+     * Returns the number of tokens recorded.
+     *
+     * @return the number of tokens
+     */
+    public long total() {
+        return this.total;
+    }
+
+    /**
+     * Returns the total lookup time recorded.
+     *
+     * @return the time, in nanoseconds
+     */
+    public long totalNanos() {
+        return this.totalNanos;
+    }
+
+    /**
+     * Prints the heavy hitters to {@code out}, one per line: count, share of
+     * tokens, share of lookup time, dictionary hit or miss, and the token.
+     *
+     * @param out
+     *            the stream to print to
+     * @updates out
+     */
+    public void report(PrintStream out) {
+        out.printf("%d tokens, %.1f ms in lookups%n", this.total,
+                this.totalNanos / 1e6);
+        for (Entry e : this.top()) {
+            out.printf("%12d %6.2f%% %6.2f%% %-4s %s%n", e.count,
+                    100.0 * e.count / Math.max(this.total, 1),
+                    100.0 * e.nanos / Math.max(this.totalNanos, 1),
+                    e.hit ? "hit" : "miss", escape(e.token));
+        }
+    }
+
+}
@@ -0,0 +1,166 @@
+import java.util.*;
+
+/**
+ * {@code TokenStream} holding a tokenized input as parallel arrays of symbol
+ * ids (into a {@code SymbolTable}) and kind codes, instead of one
+ * {@code String} per token occurrence.
+ */
+public final class TokenStream {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Initial capacity of the id and kind arrays.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Symbol ids, in stream order.
+     */
+    private int[] ids;
+
+    /**
+     * Kind codes, in stream order.
+     */
+    private byte[] kinds;
+
+    /**
+     * Number of tokens in the stream.
+     */
+    private int length;
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Kind code of a word (maximal run of characters not in the separators).
+     */
+    public static final byte WORD = 0;
+
+    /**
+     * Kind code of a separator string (maximal run of separator characters).
+     */
+    public static final byte SEPARATOR = 1;
+
+    /**
+     * Kind code of a line terminator, as it appears in the input.
+     */
+    public static final byte NEWLINE = 2;
+
+    /**
+     * Kind code of a comment or string or char literal, copied through
+     * untranslated.
+     */
+    public static final byte LITERAL = 3;
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public TokenStream() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructor with an initial capacity.
+     *
+     * @param capacity
+     *            the number of tokens that fit before the arrays grow
+     */
+    public TokenStream(int capacity) {
+        this.ids = new int[Math.max(capacity, 1)];
+        this.kinds = new byte[Math.max(capacity, 1)];
+        this.length = 0;
+    }
+
+    /**
+     * Appends a token to the end of the stream.
+     *
+     * @param id
+     *            the symbol id of the token
+     * @param kind
+     *            the kind code of the token
+     * @updates this
+     * @ensures this = #this * <(id, kind)>
+     */
+    public void add(int id, byte kind) {
+        if (this.length == this.ids.length) {
+            this.ids = Arrays.copyOf(this.ids, this.length * 2);
+            this.kinds = Arrays.copyOf(this.kinds, this.length * 2);
+        }
+        this.ids[this.length] = id;
+        this.kinds[this.length] = kind;
+        this.length++;
+    }
+
+    /**
+     * Returns the number of tokens in the stream.
+     *
+     * @return the number of tokens
+     */
+    public int length() {
+        return this.length;
+    }
+
+    /**
+     * Returns the symbol id of the token at index {@code i}.
+     *
+     * @param i
+     *            the index of the token
+     * @return the symbol id
+     * @requires 0 <= i < length
+     */
+    public int id(int i) {
+        assert 0 <= i && i < this.length : "Violation of: 0 <= i < length";
+
+        return this.ids[i];
+    }
+
+    /**
+     * Returns the kind code of the token at index {@code i}.
+     *
+     * @param i
+     *            the index of the token
+     * @return the kind code
+     * @requires 0 <= i < length
+     */
+    public byte kind(int i) {
+        assert 0 <= i && i < this.length : "Violation of: 0 <= i < length";
+
+        return this.kinds[i];
+    }
+
+    /**
+     * Translates every word through {@code table} (as built by
+     * {@code SymbolTable.compile}) into a new stream of the same length, so
+     * index {@code i} of the result is the translation of index {@code i} of
+     * this stream. Separators, newlines, literals and ids past the end of
+     * {@code table} are copied unchanged.
+     *
+     * @param table
+     *            the id to id translation table
+     * @return the translated stream
+     */
+    public TokenStream translate(int[] table) {
+        assert table != null : "Violation of: table is not null";
+
+        TokenStream output = new TokenStream(this.length);
+        for (int i = 0; i < this.length; i++) {
+            int id = this.ids[i];
+            if (this.kinds[i] == WORD && id < table.length) {
+                id = table[id];
+            }
+            output.ids[i] = id;
+            output.kinds[i] = this.kinds[i];
+        }
+        output.length = this.length;
+        return output;
+    }
+
+}
@@ -0,0 +1,195 @@
+import java.util.*;
+
+/**
+ * {@code TokenizerProfile} describing how the source of one language splits
+ * into words and separator strings. The rules of a profile are compiled into
+ * a lookup table once, so classifying a character is a single array load.
+ * Characters outside ASCII are always word characters.
+ */
+public final class TokenizerProfile {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Profiles by lower-case file extension, without the dot.
+     */
+    private static final Map<String, TokenizerProfile> BY_EXTENSION =
+            new HashMap<>();
+
+    /**
+     * The name of the language.
+     */
+    private final String name;
+
+    /**
+     * Whether each ASCII character is a separator.
+     */
+    private final boolean[] separator = new boolean[128];
+
+    /**
+     * Constructor; the table is filled in by the factory methods.
+     */
+    private TokenizerProfile(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Registers {@code profile} for each of {@code extensions}.
+     */
+    private static TokenizerProfile register(TokenizerProfile profile,
+            String... extensions) {
+        for (String extension : extensions) {
+            BY_EXTENSION.put(extension, profile);
+        }
+        return profile;
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Returns a profile whose separators are exactly the characters of
+     * {@code separators}.
+     *
+     * @param name
+     *            the name of the language
+     * @param separators
+     *            the separator characters
+     * @return the profile
+     * @requires every character of separators is ASCII
+     */
+    public static TokenizerProfile withSeparators(String name,
+            String separators) {
+        TokenizerProfile profile = new TokenizerProfile(name);
+        for (int i = 0; i < separators.length(); i++) {
+            char c = separators.charAt(i);
+            assert c < 128 : "Violation of: every character of separators is ASCII";
+            profile.separator[c] = true;
+        }
+        return profile;
+    }
+
+    /**
+     * Returns a profile whose word characters are the ASCII letters and
+     * digits plus the characters of {@code extraWordCharacters}; every other
+     * ASCII character is a separator.
+     *
+     * @param name
+     *            the name of the language
+     * @param extraWordCharacters
+     *            the non-alphanumeric ASCII characters that may occur in
+     *            words
+     * @return the profile
+     */
+    public static TokenizerProfile withWordCharacters(String name,
+            String extraWordCharacters) {
+        TokenizerProfile profile = new TokenizerProfile(name);
+        for (char c = 0; c < 128; c++) {
+            profile.separator[c] = !Character.isLetterOrDigit(c)
+                    && extraWordCharacters.indexOf(c) < 0;
+        }
+        return profile;
+    }
+
+    /**
+     * Java, with the original {@code Main.SEPARATORS}; also the fallback for
+     * unknown extensions so existing output does not change.
+     */
+    public static final TokenizerProfile JAVA = register(
+            withSeparators("java", Main.SEPARATORS), "java");
+
+    /**
+     * C and C++.
+     */
+    public static final TokenizerProfile C = register(
+            withWordCharacters("c", "_"), "c", "h", "cc", "cpp", "cxx", "hpp");
+
+    /**
+     * Kotlin.
+     */
+    public static final TokenizerProfile KOTLIN = register(
+            withWordCharacters("kotlin", "_$"), "kt", "kts");
+
+    /**
+     * Python.
+     */
+    public static final TokenizerProfile PYTHON = register(
+            withWordCharacters("python", "_"), "py", "pyw");
+
+    /**
+     * Returns the profile registered for the extension of {@code fileName}.
+     *
+     * @param fileName
+     *            the name of the source file
+     * @return the profile, or null if the extension is not known
+     */
+    public static TokenizerProfile forFileName(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        if (dot < 0 || dot < fileName.lastIndexOf('/')
+                || dot < fileName.lastIndexOf(java.io.File.separatorChar)) {
+            return null;
+        }
+        return BY_EXTENSION.get(
+                fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns the name of the language.
+     *
+     * @return the name
+     */
+    public String name() {
+        return this.name;
+    }
+
+    /**
+     * Reports whether {@code c} is a separator.
+     *
+     * @param c
+     *            the character
+     * @return true iff {@code c} is a separator
+     */
+    public boolean isSeparator(char c) {
+        return c < 128 && this.separator[c];
+    }
+
+    /**
+     * Returns the index one past the end of the word (maximal run of word
+     * characters) or separator string (maximal run of separators) starting at
+     * {@code position}.
+     *
+     * @param text
+     *            the text to scan
+     * @param position
+     *            the starting index
+     * @return the end index of the word or separator string
+     * @requires 0 <= position < |text|
+     */
+    public int tokenEnd(String text, int position) {
+        assert text != null : "Violation of: text is not null";
+        assert 0 <= position : "Violation of: 0 <= position";
+        assert position < text.length() : "Violation of: position < |text|";
+
+        int length = text.length();
+        int pos = position + 1;
+        if (this.isSeparator(text.charAt(position))) {
+            while (pos < length && this.isSeparator(text.charAt(pos))) {
+                pos++;
+            }
+        } else {
+            while (pos < length && !this.isSeparator(text.charAt(pos))) {
+                pos++;
+            }
+        }
+        return pos;
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+
+}
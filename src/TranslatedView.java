@@ -0,0 +1,296 @@
+import java.util.*;
+
+/**
+ * {@code TranslatedView} presenting the translation of a source text as a
+ * {@code CharSequence} that is computed on demand, one line at a time.
+ * {@code charAt} and {@code subSequence} translate only the lines they touch
+ * and keep the most recently used ones in a small cache. Line terminators are
+ * preserved as they are in the source.
+ *
+ * <p>
+ * The output offset of a line depends on the translated length of every line
+ * before it, so the view measures lines in order, as far as the highest
+ * offset asked for so far, and keeps those offsets in an index. Measuring
+ * costs one dictionary lookup per word and keeps no translated text;
+ * {@code length} measures the whole text. Not safe for concurrent use.
+ */
+public final class TranslatedView implements CharSequence {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * The source text.
+     */
+    private final CharSequence source;
+
+    /**
+     * The word to definition map.
+     */
+    private final Map<String, String> dictionary;
+
+    /**
+     * The tokenizer profile of the source language.
+     */
+    private final TokenizerProfile profile;
+
+    /**
+     * Source offset of the start of each line, plus {@code |source|} at the
+     * end.
+     */
+    private final int[] sourceStarts;
+
+    /**
+     * Number of lines.
+     */
+    private final int lineCount;
+
+    /**
+     * Output offset of the start of each line; valid for lines
+     * {@code [0, measured]}.
+     */
+    private final int[] outStarts;
+
+    /**
+     * Number of lines whose translated length is known.
+     */
+    private int measured;
+
+    /**
+     * Recently translated lines, least recently used first.
+     */
+    private final LinkedHashMap<Integer, String> cache;
+
+    /**
+     * Returns the source text of line {@code line} without its terminator.
+     */
+    private String sourceLine(int line) {
+        int start = this.sourceStarts[line];
+        int end = this.sourceStarts[line + 1];
+        if (end > start && this.source.charAt(end - 1) == '\n') {
+            end--;
+        }
+        return this.source.subSequence(start, end).toString();
+    }
+
+    /**
+     * Returns the length of the line terminator of line {@code line}: 1, or 0
+     * for a last line without one.
+     */
+    private int terminatorLength(int line) {
+        int end = this.sourceStarts[line + 1];
+        return end > this.sourceStarts[line]
+                && this.source.charAt(end - 1) == '\n' ? 1 : 0;
+    }
+
+    /**
+     * Returns the translated length of line {@code line} including its
+     * terminator, without building the translated text.
+     */
+    private int measure(int line) {
+        String cached = this.cache.get(line);
+        if (cached != null) {
+            return cached.length() + this.terminatorLength(line);
+        }
+        String text = this.sourceLine(line);
+        int length = this.terminatorLength(line);
+        int i = 0;
+        while (i < text.length()) {
+            int end = this.profile.tokenEnd(text, i);
+            String val = this.profile.isSeparator(text.charAt(i)) ? null
+                    : this.dictionary.get(text.substring(i, end));
+            length += val != null ? val.length() : end - i;
+            i = end;
+        }
+        return length;
+    }
+
+    /**
+     * Measures lines until the one containing output offset {@code index} is
+     * measured, or all lines are.
+     */
+    private void measureThrough(int index) {
+        while (this.measured < this.lineCount
+                && this.outStarts[this.measured] <= index) {
+            this.outStarts[this.measured + 1] = this.outStarts[this.measured]
+                    + this.measure(this.measured);
+            this.measured++;
+        }
+    }
+
+    /**
+     * Returns the line containing output offset {@code index}.
+     */
+    private int lineOf(int index) {
+        this.measureThrough(index);
+        int lo = 0;
+        int hi = this.measured - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (this.outStarts[mid] <= index) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the translated text of line {@code line} without its
+     * terminator, from the cache if possible.
+     */
+    private String translatedLine(int line) {
+        String text = this.cache.get(line);
+        if (text == null) {
+            text = Main.translateLine(this.sourceLine(line), this.dictionary,
+                    this.profile);
+            this.cache.put(line, text);
+        }
+        return text;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor; only scans {@code source} for line starts.
+     *
+     * @param source
+     *            the source text; must not change while the view is used
+     * @param dictionary
+     *            the word to definition map
+     * @param profile
+     *            the tokenizer profile of the source language
+     * @param cachedLines
+     *            the number of translated lines to keep
+     * @requires cachedLines > 0
+     */
+    public TranslatedView(CharSequence source, Map<String, String> dictionary,
+            TokenizerProfile profile, final int cachedLines) {
+        assert cachedLines > 0 : "Violation of: cachedLines > 0";
+
+        this.source = source;
+        this.dictionary = dictionary;
+        this.profile = profile;
+
+        int lines = 0;
+        int length = source.length();
+        for (int i = 0; i < length; i++) {
+            if (source.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        if (length > 0 && source.charAt(length - 1) != '\n') {
+            lines++;
+        }
+        this.lineCount = lines;
+        this.sourceStarts = new int[lines + 1];
+        int line = 1;
+        for (int i = 0; i < length && line < lines; i++) {
+            if (source.charAt(i) == '\n') {
+                this.sourceStarts[line++] = i + 1;
+            }
+        }
+        this.sourceStarts[lines] = length;
+        this.outStarts = new int[lines + 1];
+        this.measured = 0;
+
+        this.cache = new LinkedHashMap<Integer, String>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<Integer, String> eldest) {
+                return this.size() > cachedLines;
+            }
+        };
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Returns the length of the translation; measures every line not yet
+     * measured.
+     *
+     * @return the length of the translation
+     */
+    @Override
+    public int length() {
+        this.measureThrough(Integer.MAX_VALUE);
+        return this.outStarts[this.lineCount];
+    }
+
+    /**
+     * Returns the character at {@code index} of the translation, translating
+     * only the line that contains it.
+     *
+     * @param index
+     *            the output offset
+     * @return the character
+     * @requires 0 <= index < length
+     */
+    @Override
+    public char charAt(int index) {
+        int line = this.lineOf(index);
+        if (index < 0 || line >= this.measured
+                || index >= this.outStarts[line + 1]) {
+            throw new IndexOutOfBoundsException("index " + index);
+        }
+        String text = this.translatedLine(line);
+        int column = index - this.outStarts[line];
+        return column < text.length() ? text.charAt(column) : '\n';
+    }
+
+    /**
+     * Returns the translation between {@code start} and {@code end},
+     * translating only the lines in that range.
+     *
+     * @param start
+     *            the output offset of the first character
+     * @param end
+     *            the output offset one past the last character
+     * @return the translated text
+     * @requires 0 <= start <= end <= length
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end < start) {
+            throw new IndexOutOfBoundsException(start + ", " + end);
+        }
+        StringBuilder output = new StringBuilder(end - start);
+        if (start == end) {
+            return output;
+        }
+        this.measureThrough(end - 1);
+        if (end > this.outStarts[this.measured]) {
+            throw new IndexOutOfBoundsException("end " + end);
+        }
+        for (int line = this.lineOf(start); line < this.measured
+                && this.outStarts[line] < end; line++) {
+            String text = this.translatedLine(line);
+            if (this.terminatorLength(line) > 0) {
+                text = text + "\n";
+            }
+            int lineStart = this.outStarts[line];
+            output.append(text, Math.max(start - lineStart, 0),
+                    Math.min(end - lineStart, text.length()));
+        }
+        return output;
+    }
+
+    /**
+     * Returns the whole translation.
+     *
+     * @return the translated text
+     */
+    @Override
+    public String toString() {
+        return this.subSequence(0, this.length()).toString();
+    }
+
+}
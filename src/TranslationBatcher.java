@@ -0,0 +1,436 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.io.*;
+
+/**
+ * {@code TranslationBatcher} serving many small translation requests from a
+ * few worker threads. A worker that picks up a request keeps collecting
+ * requests for up to a short window, or until the batch is full, then
+ * translates the whole batch back to back into one reused buffer against
+ * the one shared dictionary and completes each request's future. The
+ * per-request cost is one queue hand-off instead of a thread, a buffer and a
+ * writer each.
+ *
+ * <p>
+ * The window bounds the latency added to a request that arrives when the
+ * queue is idle; under load, batches fill before the window ends.
+ */
+public final class TranslationBatcher implements Closeable {
+
+    /**
+     * Counters describing the batches run so far.
+     */
+    public static final class Stats {
+
+        /**
+         * Number of requests translated.
+         */
+        private final long requests;
+
+        /**
+         * Number of batches run.
+         */
+        private final long batches;
+
+        /**
+         * Largest batch run.
+         */
+        private final long largestBatch;
+
+        /**
+         * Total time requests waited before being translated, in
+         * nanoseconds.
+         */
+        private final long totalWait;
+
+        /**
+         * Longest time a request waited before being translated, in
+         * nanoseconds.
+         */
+        private final long maxWait;
+
+        /**
+         * Constructor.
+         */
+        private Stats(long requests, long batches, long largestBatch,
+                long totalWait, long maxWait) {
+            this.requests = requests;
+            this.batches = batches;
+            this.largestBatch = largestBatch;
+            this.totalWait = totalWait;
+            this.maxWait = maxWait;
+        }
+
+        /**
+         * Returns the number of requests translated.
+         *
+         * @return the number of requests
+         */
+        public long requests() {
+            return this.requests;
+        }
+
+        /**
+         * Returns the number of batches run.
+         *
+         * @return the number of batches
+         */
+        public long batches() {
+            return this.batches;
+        }
+
+        /**
+         * Returns the mean number of requests per batch.
+         *
+         * @return the mean batch size
+         */
+        public double meanBatchSize() {
+            return this.batches == 0 ? 0
+                    : (double) this.requests / this.batches;
+        }
+
+        /**
+         * Returns the largest number of requests in one batch.
+         *
+         * @return the largest batch size
+         */
+        public long largestBatch() {
+            return this.largestBatch;
+        }
+
+        /**
+         * Returns the mean time a request waited in the queue before its
+         * batch was translated.
+         *
+         * @return the mean added latency, in microseconds
+         */
+        public double meanWaitMicros() {
+            return this.requests == 0 ? 0
+                    : this.totalWait / 1e3 / this.requests;
+        }
+
+        /**
+         * Returns the longest time a request waited in the queue before its
+         * batch was translated.
+         *
+         * @return the largest added latency, in microseconds
+         */
+        public double maxWaitMicros() {
+            return this.maxWait / 1e3;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d requests in %d batches, mean batch %.1f, "
+                    + "largest %d, mean wait %.1f us, max wait %.1f us",
+                    this.requests, this.batches, this.meanBatchSize(),
+                    this.largestBatch, this.meanWaitMicros(),
+                    this.maxWaitMicros());
+        }
+
+    }
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * A queued request.
+     */
+    private static final class Request {
+
+        /**
+         * The text to translate.
+         */
+        final String text;
+
+        /**
+         * The tokenizer profile of the text.
+         */
+        final TokenizerProfile profile;
+
+        /**
+         * When the request was queued, from {@code System.nanoTime}.
+         */
+        final long queued;
+
+        /**
+         * The translation, once done.
+         */
+        final CompletableFuture<String> result = new CompletableFuture<>();
+
+        /**
+         * Constructor.
+         */
+        Request(String text, TokenizerProfile profile) {
+            this.text = text;
+            this.profile = profile;
+            this.queued = System.nanoTime();
+        }
+
+    }
+
+    /**
+     * How long an idle worker waits for a request before checking whether
+     * the batcher was closed.
+     */
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    /**
+     * The shared dictionary.
+     */
+    private final Map<String, String> dictionary;
+
+    /**
+     * Largest number of requests per batch.
+     */
+    private final int maxBatch;
+
+    /**
+     * How long a batch keeps collecting after its first request was queued,
+     * in nanoseconds.
+     */
+    private final long windowNanos;
+
+    /**
+     * Requests not yet picked up.
+     */
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * The worker threads.
+     */
+    private final Thread[] workers;
+
+    /**
+     * Whether {@code close} has been called. Set, and checked before
+     * queuing, while holding {@code this}, so once a worker sees it set no
+     * more requests can be queued.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Number of requests translated.
+     */
+    private final AtomicLong requests = new AtomicLong();
+
+    /**
+     * Number of batches run.
+     */
+    private final AtomicLong batches = new AtomicLong();
+
+    /**
+     * Largest batch run.
+     */
+    private final AtomicLong largestBatch = new AtomicLong();
+
+    /**
+     * Total queue wait, in nanoseconds.
+     */
+    private final AtomicLong totalWait = new AtomicLong();
+
+    /**
+     * Longest queue wait, in nanoseconds.
+     */
+    private final AtomicLong maxWait = new AtomicLong();
+
+    /**
+     * Raises {@code counter} to {@code value} if it is lower.
+     */
+    private static void raise(AtomicLong counter, long value) {
+        long current = counter.get();
+        while (value > current && !counter.compareAndSet(current, value)) {
+            current = counter.get();
+        }
+    }
+
+    /**
+     * Adds requests to {@code batch} until it is full or the window of its
+     * first request has passed.
+     */
+    private void collect(List<Request> batch) throws InterruptedException {
+        long deadline = batch.get(0).queued + this.windowNanos;
+        this.queue.drainTo(batch, this.maxBatch - batch.size());
+        while (batch.size() < this.maxBatch) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            Request next = this.queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+            this.queue.drainTo(batch, this.maxBatch - batch.size());
+        }
+    }
+
+    /**
+     * Translates {@code batch} into the reused {@code buffer} and completes
+     * its requests.
+     */
+    private void run(List<Request> batch, StringBuilder buffer) {
+        long start = System.nanoTime();
+        long waited = 0;
+        for (Request request : batch) {
+            long wait = start - request.queued;
+            waited += wait;
+            raise(this.maxWait, wait);
+            buffer.setLength(0);
+            try {
+                Main.translateInto(request.text, this.dictionary,
+                        request.profile, buffer);
+                request.result.complete(buffer.toString());
+            } catch(RuntimeException e) {
+                request.result.completeExceptionally(e);
+            }
+        }
+        this.totalWait.addAndGet(waited);
+        this.requests.addAndGet(batch.size());
+        this.batches.incrementAndGet();
+        raise(this.largestBatch, batch.size());
+    }
+
+    /**
+     * Runs batches until closed and the queue is empty.
+     */
+    private void work() {
+        List<Request> batch = new ArrayList<>(this.maxBatch);
+        StringBuilder buffer = new StringBuilder(4096);
+        try {
+            while (!this.closed || !this.queue.isEmpty()) {
+                Request first = this.queue.poll(IDLE_POLL_MILLIS,
+                        TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                this.collect(batch);
+                this.run(batch, buffer);
+                batch.clear();
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor; call {@code start} to begin serving.
+     *
+     * @param dictionary
+     *            the word to definition map shared by all requests
+     * @param maxBatch
+     *            the largest number of requests per batch
+     * @param windowMicros
+     *            how long a batch keeps collecting after its first request
+     *            was queued, in microseconds
+     * @param threads
+     *            the number of worker threads
+     * @requires maxBatch > 0 and windowMicros >= 0 and threads > 0
+     */
+    public TranslationBatcher(Map<String, String> dictionary, int maxBatch,
+            long windowMicros, int threads) {
+        assert maxBatch > 0 : "Violation of: maxBatch > 0";
+        assert windowMicros >= 0 : "Violation of: windowMicros >= 0";
+        assert threads > 0 : "Violation of: threads > 0";
+
+        this.dictionary = dictionary;
+        this.maxBatch = maxBatch;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.workers = new Thread[threads];
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Starts the worker threads, as daemons.
+     *
+     * @updates this
+     */
+    public synchronized void start() {
+        if (this.workers[0] != null) {
+            return;
+        }
+        for (int i = 0; i < this.workers.length; i++) {
+            this.workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    TranslationBatcher.this.work();
+                }
+            }, "translation-batcher " + i);
+            this.workers[i].setDaemon(true);
+            this.workers[i].start();
+        }
+    }
+
+    /**
+     * Queues {@code text} for translation.
+     *
+     * @param text
+     *            the text to translate; line terminators are kept
+     * @param profile
+     *            the tokenizer profile of the text
+     * @return the translation, when done
+     * @throws RejectedExecutionException
+     *             if the batcher is closed
+     */
+    public Future<String> submit(String text, TokenizerProfile profile) {
+        Request request = new Request(text, profile);
+        synchronized (this) {
+            if (this.closed) {
+                throw new RejectedExecutionException("Batcher closed");
+            }
+            this.queue.add(request);
+        }
+        return request.result;
+    }
+
+    /**
+     * Returns the counters of the batches run so far.
+     *
+     * @return the statistics
+     */
+    public Stats stats() {
+        return new Stats(this.requests.get(), this.batches.get(),
+                this.largestBatch.get(), this.totalWait.get(),
+                this.maxWait.get());
+    }
+
+    /**
+     * Stops accepting requests, translates those already queued and waits
+     * for the workers to finish.
+     *
+     * @throws InterruptedIOException
+     *             if interrupted while waiting
+     */
+    @Override
+    public void close() throws InterruptedIOException {
+        synchronized (this) {
+            this.closed = true;
+        }
+        for (Thread worker : this.workers) {
+            if (worker == null) {
+                continue;
+            }
+            try {
+                worker.join();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted closing");
+            }
+        }
+        Request late;
+        while ((late = this.queue.poll()) != null) {
+            late.result.completeExceptionally(
+                    new RejectedExecutionException("Batcher closed"));
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+import java.util.*;
+import java.io.*;
+import java.lang.management.*;
+import java.net.*;
+import java.nio.charset.*;
+
+/**
+ * {@code TranslationWorker} process serving a {@code WorkerCoordinator}. It
+ * connects to the coordinator, translates each file it is sent with
+ * {@code Main.translateFile} and reports back, until the coordinator
+ * disconnects. Run as {@code java TranslationWorker port [dictionary]}.
+ */
+public final class TranslationWorker {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * No instances.
+     */
+    private TranslationWorker() {
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Serves the coordinator listening on {@code port} of the loopback
+     * interface until it disconnects.
+     *
+     * @param port
+     *            the port of the coordinator
+     * @param dictionary
+     *            the word to definition map
+     * @param id
+     *            the id to register with; unique among the workers
+     * @throws IOException
+     *             if the connection fails
+     */
+    public static void serve(int port, Map<String, String> dictionary,
+            String id) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                port)) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    socket.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(new BufferedWriter(
+                    new OutputStreamWriter(socket.getOutputStream(),
+                            StandardCharsets.UTF_8)), true);
+            out.println("HELLO\t" + id);
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (!fields[0].equals("TRANSLATE") || fields.length < 3) {
+                    System.err.println("Unknown message: " + line);
+                    continue;
+                }
+                File inFile = new File(fields[1]);
+                File outFile = new File(fields[2]);
+                if (!inFile.canRead()) {
+                    out.println("FAILED\t" + fields[2] + "\tcannot read "
+                            + fields[1]);
+                    continue;
+                }
+                boolean written;
+                String reason = "cannot write " + fields[2];
+                try {
+                    written = Main.translateFile(fields[1], fields[2],
+                            dictionary);
+                } catch(RuntimeException e) {
+                    written = false;
+                    reason = e.toString();
+                }
+                if (written) {
+                    out.println("DONE\t" + fields[2] + "\t"
+                            + outFile.length());
+                } else {
+                    out.println("FAILED\t" + fields[2] + "\t" + reason);
+                }
+            }
+        }
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the coordinator port, and optionally the dictionary file
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: java TranslationWorker port "
+                    + "[dictionary]");
+            return;
+        }
+        String fileName = args.length > 1 ? args[1] : Main.DEFAULT_DICTIONARY;
+        Map<String, String> dictionary = Main.buildDictionary(fileName, false);
+        String id = ManagementFactory.getRuntimeMXBean().getName();
+        try {
+            serve(Integer.parseInt(args[0]), dictionary, id);
+        } catch(IOException e) {
+            System.err.println("Error serving coordinator: " + e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,206 @@
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * {@code VersionedDictionary} that can be updated while translations run.
+ * Every update publishes a new immutable, numbered {@code Snapshot} by
+ * copy-on-write; readers take a snapshot once and never block or see a
+ * half-applied change. Concurrent writers retry on conflict instead of
+ * locking.
+ */
+public final class VersionedDictionary {
+
+    /**
+     * An immutable version of the dictionary.
+     */
+    public static final class Snapshot {
+
+        /**
+         * The version number; increases by one per update.
+         */
+        private final long version;
+
+        /**
+         * The unmodifiable word to definition map.
+         */
+        private final Map<String, String> map;
+
+        /**
+         * Constructor from a map that is never modified afterwards.
+         */
+        private Snapshot(long version, Map<String, String> map) {
+            this.version = version;
+            this.map = Collections.unmodifiableMap(map);
+        }
+
+        /**
+         * Returns the version number of this snapshot.
+         *
+         * @return the version number
+         */
+        public long version() {
+            return this.version;
+        }
+
+        /**
+         * Returns the unmodifiable word to definition map of this snapshot.
+         *
+         * @return the dictionary
+         */
+        public Map<String, String> map() {
+            return this.map;
+        }
+
+    }
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * The current snapshot.
+     */
+    private final AtomicReference<Snapshot> current;
+
+    /**
+     * Computes the next version of {@code map}; {@code map} is a private copy
+     * of the current version and may be modified.
+     */
+    private interface Update {
+        /**
+         * Applies the update to {@code map} and reports whether anything
+         * changed.
+         */
+        boolean apply(Map<String, String> map);
+    }
+
+    /**
+     * Applies {@code update} to a copy of the current snapshot and publishes
+     * it, retrying if another writer published first.
+     */
+    private boolean update(Update update) {
+        while (true) {
+            Snapshot before = this.current.get();
+            Map<String, String> copy = new HashMap<>(before.map);
+            if (!update.apply(copy)) {
+                return false;
+            }
+            Snapshot after = new Snapshot(before.version + 1, copy);
+            if (this.current.compareAndSet(before, after)) {
+                return true;
+            }
+        }
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor from an initial dictionary, published as version 0.
+     *
+     * @param initial
+     *            the initial word to definition map; copied
+     */
+    public VersionedDictionary(Map<String, String> initial) {
+        this.current = new AtomicReference<>(
+                new Snapshot(0, new HashMap<>(initial)));
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Returns the current snapshot. Never blocks.
+     *
+     * @return the current snapshot
+     */
+    public Snapshot snapshot() {
+        return this.current.get();
+    }
+
+    /**
+     * Adds or changes the definition of {@code word}.
+     *
+     * @param word
+     *            the word
+     * @param definition
+     *            the new definition
+     * @updates this
+     */
+    public void put(final String word, final String definition) {
+        assert word != null : "Violation of: word is not null";
+        assert definition != null : "Violation of: definition is not null";
+
+        this.update(new Update() {
+            @Override
+            public boolean apply(Map<String, String> map) {
+                return !definition.equals(map.put(word, definition));
+            }
+        });
+    }
+
+    /**
+     * Removes {@code word}.
+     *
+     * @param word
+     *            the word
+     * @return true iff {@code word} was in the dictionary
+     * @updates this
+     */
+    public boolean remove(final String word) {
+        return this.update(new Update() {
+            @Override
+            public boolean apply(Map<String, String> map) {
+                return map.remove(word) != null;
+            }
+        });
+    }
+
+    /**
+     * Changes the definition of {@code word} from {@code expected} to
+     * {@code definition}, only if it is currently {@code expected}.
+     *
+     * @param word
+     *            the word
+     * @param expected
+     *            the definition the word must currently have
+     * @param definition
+     *            the new definition
+     * @return true iff the definition was changed
+     * @updates this
+     */
+    public boolean replace(final String word, final String expected,
+            final String definition) {
+        assert definition != null : "Violation of: definition is not null";
+
+        return this.update(new Update() {
+            @Override
+            public boolean apply(Map<String, String> map) {
+                return map.replace(word, expected, definition);
+            }
+        });
+    }
+
+    /**
+     * Replaces the whole dictionary with {@code dictionary} in one atomic
+     * step; readers see either the old or the new version in full.
+     *
+     * @param dictionary
+     *            the new word to definition map; copied
+     * @return the published snapshot
+     * @updates this
+     */
+    public Snapshot replaceAll(Map<String, String> dictionary) {
+        Map<String, String> copy = new HashMap<>(dictionary);
+        while (true) {
+            Snapshot before = this.current.get();
+            Snapshot after = new Snapshot(before.version + 1, copy);
+            if (this.current.compareAndSet(before, after)) {
+                return after;
+            }
+        }
+    }
+
+}
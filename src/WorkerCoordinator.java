@@ -0,0 +1,463 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+
+/**
+ * {@code WorkerCoordinator} spreading the translation of a source tree over
+ * several {@code TranslationWorker} processes that connect to it over a
+ * local socket. Files are assigned to workers by consistent hashing of
+ * their relative paths, so when a worker joins or dies only the files that
+ * hash to it move: a dead worker's unfinished files go to the next workers
+ * on the ring, and a new worker takes over the waiting files it now owns.
+ * Progress from all workers is merged and printed by the coordinator.
+ *
+ * <p>
+ * Workers read and write the files themselves, so they must share the
+ * file system with the coordinator. The protocol is one tab-separated line
+ * per message: {@code HELLO id} and then {@code DONE path bytes} or
+ * {@code FAILED path message} from a worker, {@code TRANSLATE in out} to it.
+ */
+public final class WorkerCoordinator implements Closeable {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Points on the hash ring per worker.
+     */
+    private static final int VIRTUAL_NODES = 64;
+
+    /**
+     * Files sent to a worker before it reports back.
+     */
+    private static final int MAX_IN_FLIGHT = 4;
+
+    /**
+     * How long to wait for a worker to join when none is left.
+     */
+    private static final long WORKER_WAIT_MILLIS = 10000;
+
+    /**
+     * A connected worker.
+     */
+    private static final class Worker {
+
+        /**
+         * The id the worker gave in its {@code HELLO}.
+         */
+        final String id;
+
+        /**
+         * The connection.
+         */
+        final Socket socket;
+
+        /**
+         * Writer for messages to the worker.
+         */
+        final PrintWriter out;
+
+        /**
+         * Files assigned to the worker and not yet sent to it.
+         */
+        final Deque<String> backlog = new ArrayDeque<>();
+
+        /**
+         * Files sent to the worker and not yet reported.
+         */
+        final Set<String> inFlight = new LinkedHashSet<>();
+
+        /**
+         * Constructor.
+         */
+        Worker(String id, Socket socket, PrintWriter out) {
+            this.id = id;
+            this.socket = socket;
+            this.out = out;
+        }
+
+    }
+
+    /**
+     * Something that happened on a worker connection.
+     */
+    private static final class Event {
+
+        /**
+         * The kind of event: {@code HELLO}, {@code DONE}, {@code FAILED} or
+         * {@code DEAD}.
+         */
+        final String kind;
+
+        /**
+         * The worker.
+         */
+        final Worker worker;
+
+        /**
+         * The message fields after the kind.
+         */
+        final String[] fields;
+
+        /**
+         * Constructor.
+         */
+        Event(String kind, Worker worker, String[] fields) {
+            this.kind = kind;
+            this.worker = worker;
+            this.fields = fields;
+        }
+
+    }
+
+    /**
+     * The listening socket.
+     */
+    private final ServerSocket server;
+
+    /**
+     * Events from all connections, in arrival order.
+     */
+    private final BlockingQueue<Event> events = new LinkedBlockingQueue<>();
+
+    /**
+     * The hash ring: point to worker. Only used by the coordinating thread.
+     */
+    private final TreeMap<Integer, Worker> ring = new TreeMap<>();
+
+    /**
+     * Live workers, by id. Only used by the coordinating thread.
+     */
+    private final Map<String, Worker> workers = new LinkedHashMap<>();
+
+    /**
+     * Files waiting for a worker to join. Only used by the coordinating
+     * thread.
+     */
+    private final Deque<String> unassigned = new ArrayDeque<>();
+
+    /**
+     * The thread accepting connections.
+     */
+    private final Thread acceptor;
+
+    /**
+     * Returns a well-mixed hash of {@code key}.
+     */
+    private static int hash(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 13);
+    }
+
+    /**
+     * Returns the worker owning {@code file}: the first on the ring at or
+     * after the file's hash.
+     */
+    private Worker owner(String file) {
+        Map.Entry<Integer, Worker> e = this.ring.ceilingEntry(hash(file));
+        return (e != null ? e : this.ring.firstEntry()).getValue();
+    }
+
+    /**
+     * Reads messages from a newly accepted connection and queues them as
+     * events, ending with {@code DEAD}.
+     */
+    private void serve(Socket socket) {
+        Worker worker = null;
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    socket.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(new BufferedWriter(
+                    new OutputStreamWriter(socket.getOutputStream(),
+                            StandardCharsets.UTF_8)), true);
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (worker == null) {
+                    if (!fields[0].equals("HELLO") || fields.length < 2) {
+                        break;
+                    }
+                    worker = new Worker(fields[1], socket, out);
+                }
+                this.events.add(new Event(fields[0], worker,
+                        Arrays.copyOfRange(fields, 1, fields.length)));
+            }
+        } catch(IOException e) {
+            // Treated as the worker dying.
+        }
+        if (worker != null) {
+            this.events.add(new Event("DEAD", worker, new String[0]));
+        }
+        try {
+            socket.close();
+        } catch(IOException e) {
+            System.err.println("Error closing worker socket");
+        }
+    }
+
+    /**
+     * Accepts connections until the server socket is closed.
+     */
+    private void accept() {
+        while (!this.server.isClosed()) {
+            final Socket socket;
+            try {
+                socket = this.server.accept();
+            } catch(IOException e) {
+                return;
+            }
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    WorkerCoordinator.this.serve(socket);
+                }
+            }, "worker-connection " + socket.getPort());
+            reader.setDaemon(true);
+            reader.start();
+        }
+    }
+
+    /**
+     * Adds {@code worker} to the ring and moves to it the waiting files it
+     * now owns.
+     */
+    private void join(Worker worker) {
+        this.workers.put(worker.id, worker);
+        for (int i = 0; i < VIRTUAL_NODES; i++) {
+            this.ring.put(hash(worker.id + "#" + i), worker);
+        }
+        for (Worker other : this.workers.values()) {
+            if (other == worker) {
+                continue;
+            }
+            Iterator<String> it = other.backlog.iterator();
+            while (it.hasNext()) {
+                String file = it.next();
+                if (this.owner(file) == worker) {
+                    it.remove();
+                    worker.backlog.add(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes {@code worker} from the ring and gives its unfinished files to
+     * their new owners.
+     */
+    private void leave(Worker worker) {
+        if (this.workers.remove(worker.id) != worker) {
+            return;
+        }
+        Iterator<Map.Entry<Integer, Worker>> it = this.ring.entrySet()
+                .iterator();
+        while (it.hasNext()) {
+            if (it.next().getValue() == worker) {
+                it.remove();
+            }
+        }
+        List<String> orphans = new ArrayList<>(worker.inFlight);
+        orphans.addAll(worker.backlog);
+        worker.inFlight.clear();
+        worker.backlog.clear();
+        if (!orphans.isEmpty()) {
+            System.err.println("Worker " + worker.id + " died; reassigning "
+                    + orphans.size() + " files");
+        }
+        for (String file : orphans) {
+            this.assign(file);
+        }
+    }
+
+    /**
+     * Queues {@code file} on its owner, or in {@code unassigned} until a
+     * worker joins if there are none.
+     */
+    private void assign(String file) {
+        if (this.ring.isEmpty()) {
+            this.unassigned.add(file);
+        } else {
+            this.owner(file).backlog.add(file);
+        }
+    }
+
+    /**
+     * Sends each worker files from its backlog up to {@code MAX_IN_FLIGHT}.
+     */
+    private void dispatch(Path inRoot, Path outRoot) {
+        for (Worker worker : this.workers.values()) {
+            while (worker.inFlight.size() < MAX_IN_FLIGHT
+                    && !worker.backlog.isEmpty()) {
+                String file = worker.backlog.removeFirst();
+                worker.inFlight.add(file);
+                worker.out.println("TRANSLATE\t" + inRoot.resolve(file)
+                        + "\t" + outRoot.resolve(file));
+            }
+        }
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor; listens on the loopback interface and accepts workers
+     * from then on.
+     *
+     * @param port
+     *            the port to listen on, or 0 for any free port
+     * @throws IOException
+     *             if the port cannot be opened
+     */
+    public WorkerCoordinator(int port) throws IOException {
+        this.server = new ServerSocket(port, 50,
+                InetAddress.getLoopbackAddress());
+        this.acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                WorkerCoordinator.this.accept();
+            }
+        }, "worker-acceptor");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Returns the port workers connect to.
+     *
+     * @return the port
+     */
+    public int port() {
+        return this.server.getLocalPort();
+    }
+
+    /**
+     * Translates every source file under {@code inDirectory} into the same
+     * relative path under {@code outDirectory} on the connected workers, like
+     * {@code Main.translateTree}. Files with an extension no profile is
+     * registered for are copied by the coordinator. Blocks until every file
+     * is done, reassigning the files of workers that die.
+     *
+     * @param inDirectory
+     *            the root of the source tree
+     * @param outDirectory
+     *            the root of the translated tree
+     * @return the number of files translated
+     * @throws IOException
+     *             if the tree cannot be read, or no worker is left for
+     *             {@code WORKER_WAIT_MILLIS}
+     */
+    public int translateTree(String inDirectory, String outDirectory)
+            throws IOException {
+        final Path inRoot = Paths.get(inDirectory).toAbsolutePath();
+        final Path outRoot = Paths.get(outDirectory).toAbsolutePath();
+        final List<String> files = new ArrayList<>();
+        Files.walkFileTree(inRoot, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file,
+                    BasicFileAttributes attributes) throws IOException {
+                String relative = inRoot.relativize(file).toString();
+                Path out = outRoot.resolve(relative);
+                Files.createDirectories(out.getParent());
+                if (TokenizerProfile.forFileName(
+                        file.getFileName().toString()) != null) {
+                    files.add(relative);
+                } else {
+                    Files.copy(file, out,
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        for (String file : files) {
+            this.assign(file);
+        }
+        int total = files.size();
+        int done = 0;
+        int failed = 0;
+        long bytes = 0;
+        int reportEvery = Math.max(total / 20, 1);
+        long start = System.nanoTime();
+        while (done + failed < total) {
+            this.dispatch(inRoot, outRoot);
+            Event event;
+            try {
+                event = this.events.poll(WORKER_WAIT_MILLIS,
+                        TimeUnit.MILLISECONDS);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted translating");
+            }
+            if (event == null) {
+                if (this.workers.isEmpty()) {
+                    throw new IOException("No workers left; "
+                            + (total - done - failed) + " files unfinished");
+                }
+                continue;
+            }
+
+            Worker worker = event.worker;
+            if (event.kind.equals("HELLO")) {
+                this.join(worker);
+                while (!this.unassigned.isEmpty()) {
+                    this.assign(this.unassigned.removeFirst());
+                }
+                System.out.println("Worker " + worker.id + " joined; "
+                        + this.workers.size() + " workers");
+            } else if (event.kind.equals("DEAD")) {
+                this.leave(worker);
+            } else if (this.workers.get(worker.id) == worker
+                    && event.fields.length >= 2) {
+                String file = outRoot.relativize(Paths.get(event.fields[0]))
+                        .toString();
+                if (!worker.inFlight.remove(file)) {
+                    continue;
+                }
+                if (event.kind.equals("DONE")) {
+                    done++;
+                    bytes += Long.parseLong(event.fields[1]);
+                } else {
+                    failed++;
+                    System.err.println("Error translating " + file + " on "
+                            + worker.id + ": " + event.fields[1]);
+                }
+                if ((done + failed) % reportEvery == 0
+                        || done + failed == total) {
+                    System.out.printf("Translated %d/%d files, %d bytes, "
+                            + "%d workers, %.1f s%n", done, total, bytes,
+                            this.workers.size(),
+                            (System.nanoTime() - start) / 1e9);
+                }
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Stops accepting workers and disconnects those connected, which makes
+     * them exit.
+     *
+     * @throws IOException
+     *             if the server socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.server.close();
+        for (Worker worker : this.workers.values()) {
+            worker.socket.close();
+        }
+    }
+
+}
@@ -0,0 +1,21 @@
+pubilc class ImportTable {
+
+    privtae final List<String> imports = new ArrayList<>();
+    private int returns, cases, breaks, bytes, chars, longs, enums;
+    private double[] doubles;
+    private float[] floats;
+    private String packages, interfaces, instances, finale, whale, glass, clash;
+    private Boolean switched;
+    private Long thrown;
+
+    public ImportTable(String extend, String implement, Object cast) {
+        this.packages = extend + implement;
+        this.switched = Boolean.TRUE;
+    }
+
+    protcted int count() {
+        retrun imports.size() + returns + cases + breaks + bytes + chars
+                + longs + enums + doubles.length + floats.length;
+    }
+
+}
\ No newline at end of file
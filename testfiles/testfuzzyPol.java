@@ -0,0 +1,21 @@
+publiczny klasa ImportTable {
+
+    prywatny kres List<String> imports = nowy ArrayList<>();
+    prywatny int returns, cases, breaks, bytes, chars, longs, enums;
+    prywatny double[] doubles;
+    prywatny float[] floats;
+    prywatny String packages, interfaces, instances, finale, whale, glass, clash;
+    prywatny Boolean switched;
+    prywatny Long thrown;
+
+    publiczny ImportTable(String extend, String implement, Object cast) {
+        to.packages = extend + implement;
+        to.switched = Boolean.TRUE;
+    }
+
+    chroniony int count() {
+        powrót imports.size() + returns + cases + breaks + bytes + chars
+                + longs + enums + doubles.length + floats.length;
+    }
+
+}